@@ -0,0 +1,64 @@
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Генератор нагрузки для bench.sh. Запускается без сборки: java bench/Load.java METHOD URL REQUESTS CONCURRENCY [DATA]
+ * (JDK 11 или новее). Выполняет REQUESTS запросов в CONCURRENCY соединениях с постоянным подключением
+ * и выводит для каждого запроса строку "код время_до_первого_байта полное_время" в секундах.
+ * Cookie сессии передается переменной окружения COOKIE
+ */
+public class Load {
+
+    public static void main(String[] args) throws Exception {
+        String method = args[0];
+        URI uri = URI.create(args[1]);
+        int requests = Integer.parseInt(args[2]);
+        int concurrency = Integer.parseInt(args[3]);
+        String data = args.length > 4 ? args[4] : "";
+        String cookie = System.getenv().getOrDefault("COOKIE", "");
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        AtomicInteger remaining = new AtomicInteger(requests);
+        StringBuffer out = new StringBuffer();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            workers.execute(() -> {
+                while (remaining.getAndDecrement() > 0) {
+                    HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                            .header("Cookie", cookie)
+                            .header("Accept", "text/html")
+                            .header("Accept-Encoding", "gzip");
+                    if ("POST".equals(method))
+                        request.header("Content-Type", "application/x-www-form-urlencoded")
+                                .POST(HttpRequest.BodyPublishers.ofString(data));
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+                        long firstByte = System.nanoTime();
+                        try (InputStream body = response.body()) {
+                            body.transferTo(OutputStream.nullOutputStream());
+                        }
+                        long end = System.nanoTime();
+                        out.append(response.statusCode()).append(' ').append((firstByte - start) / 1e9)
+                                .append(' ').append((end - start) / 1e9).append('\n');
+                    } catch (Exception e) {
+                        out.append("599 0 ").append((System.nanoTime() - start) / 1e9).append('\n');
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+        System.out.print(out);
+    }
+}
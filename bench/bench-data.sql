@@ -0,0 +1,4 @@
+INSERT INTO clients (client_id, first_name, last_name, sex, age, passport_series, passport_number, phone, user_id)
+SELECT X, 'Bench', 'Client', 'Male', '30', '2222', CAST(100000 + X AS VARCHAR), '88005553535', 0
+FROM SYSTEM_RANGE(2, 2001);
+ALTER SEQUENCE client_id_sequence RESTART WITH 10001;
@@ -0,0 +1,97 @@
+#!/usr/bin/env bash
+# Нагрузочный прогон одной страницы приложения, запущенного с профилем bench (H2 в памяти,
+# 2000 общих клиентов из bench-data.sql). Настройки профиля лежат в bench/ и не попадают в сборку,
+# поэтому приложение запускается из корня репозитория с дополнительным каталогом настроек:
+#
+#   mvn -B -q package -DskipTests
+#   java -XX:+UseSerialGC -Xmx4g -Xmn3g -XX:-ResizeTLAB -XX:TLABSize=64k -jar target/gazer.war \
+#       --spring.config.additional-location=file:bench/ --spring.profiles.active=bench &
+#   PID=$! bench/bench.sh GET /clients 2000 16
+#   PID=$! bench/bench.sh POST /findbyname 500 16 'firstName=Bench&lastName=Client'
+#
+# Если задано CLIENTS, то перед прогоном пользователю импортируется столько собственных клиентов
+# через /import, чтобы страницы выбирали клиентов пользователя из базы данных.
+# Запросы выполняет bench/Load.java (нужен JDK 11 или новее, путь задается переменной JAVA).
+# Выводит время до первого байта (TTFB) и полное время ответа по процентилям, пропускную способность,
+# а если задан PID процесса приложения, то процессорное время и объем выделенной памяти на запрос.
+# Объем памяти считается по заполнению eden (jstat), поэтому молодое поколение должно вмещать
+# весь прогон без сборки мусора (-Xmn3g); иначе вместо числа выводится предупреждение. Размер TLAB
+# фиксируется небольшим, иначе заполнение eden растет шагами по несколько мегабайт.
+# Для сравнения потоков платформы и виртуальных потоков приложение запускается на JDK 21
+# с --server.virtual-threads.enabled=true и без него, а прогон выполняется с большим CONCURRENCY
+set -euo pipefail
+
+METHOD=${1:?METHOD}
+PATH_=${2:?PATH}
+REQUESTS=${3:-1000}
+CONCURRENCY=${4:-8}
+DATA=${5:-}
+BASE_URL=${BASE_URL:-http://localhost:8080}
+WARMUP=${WARMUP:-500}
+EMAIL=${EMAIL:-bench@test.com}
+PASSWORD=${PASSWORD:-123456789}
+JAVA=${JAVA:-java}
+LOAD="$(dirname "$0")/Load.java"
+
+COOKIES=$(mktemp)
+TIMES=$(mktemp)
+trap 'rm -f "$COOKIES" "$TIMES"' EXIT
+
+curl -s -o /dev/null -d "username=Bench&email=$EMAIL&password=$PASSWORD" "$BASE_URL/register"
+curl -s -o /dev/null -c "$COOKIES" -d "email=$EMAIL&password=$PASSWORD" "$BASE_URL/login"
+SESSION=$(awk '$6 == "JSESSIONID" { print $7 }' "$COOKIES")
+[ -n "$SESSION" ] || { echo "Не удалось войти в приложение" >&2; exit 1; }
+export COOKIE="JSESSIONID=$SESSION"
+
+if [ "${CLIENTS:-0}" -gt 0 ]; then
+    CSV=$(mktemp --suffix=.csv)
+    { echo "first_name,last_name,sex,age,passport_series,passport_number,phone"
+      for i in $(seq "$CLIENTS"); do echo "Own,Client,Female,40,3333,$((300000 + i)),88005553535"; done; } > "$CSV"
+    curl -s -o /dev/null -H "Cookie: $COOKIE" -F "file=@$CSV;type=text/csv" "$BASE_URL/import"
+    rm -f "$CSV"
+fi
+
+run() {
+    "$JAVA" "$LOAD" "$METHOD" "$BASE_URL$PATH_" "$1" "$CONCURRENCY" "$DATA"
+}
+
+cpu_ticks() {
+    awk '{ print $14 + $15 }' "/proc/$PID/stat"
+}
+
+eden() {
+    jstat -gc "$PID" | awk 'NR == 1 { for (i = 1; i <= NF; i++) col[$i] = i }
+                            NR == 2 { printf "%d %d\n", $col["EU"] * 1024, $col["YGC"] }'
+}
+
+[ "$WARMUP" -gt 0 ] && run "$WARMUP" > /dev/null
+
+if [ -n "${PID:-}" ]; then
+    read -r EDEN_BEFORE YGC_BEFORE < <(eden)
+    CPU_BEFORE=$(cpu_ticks)
+fi
+START=$(date +%s%N)
+run "$REQUESTS" > "$TIMES"
+END=$(date +%s%N)
+
+ERRORS=$(awk '$1 >= 400' "$TIMES" | wc -l)
+echo "$METHOD $PATH_: $REQUESTS запросов, $CONCURRENCY одновременно, ошибок $ERRORS"
+awk -v start="$START" -v end="$END" -v n="$REQUESTS" \
+    'BEGIN { printf "пропускная способность: %.1f запросов/с\n", n / ((end - start) / 1e9) }'
+for column in 2 3; do
+    [ "$column" = 2 ] && name=TTFB || name=total
+    awk -v c="$column" '{ print $c * 1000 }' "$TIMES" | sort -n | awk -v name="$name" \
+        '{ v[NR] = $1 } END { printf "%s, мс: p50 %.2f  p95 %.2f  p99 %.2f\n", name, v[int(NR * 0.50)], v[int(NR * 0.95)], v[int(NR * 0.99)] }'
+done
+
+if [ -n "${PID:-}" ]; then
+    CPU_AFTER=$(cpu_ticks)
+    read -r EDEN_AFTER YGC_AFTER < <(eden)
+    awk -v t="$((CPU_AFTER - CPU_BEFORE))" -v hz="$(getconf CLK_TCK)" -v n="$REQUESTS" \
+        'BEGIN { printf "процессорное время: %.3f мс/запрос\n", t * 1000 / hz / n }'
+    if [ "$YGC_AFTER" = "$YGC_BEFORE" ]; then
+        echo "выделено памяти: $(( (EDEN_AFTER - EDEN_BEFORE) / REQUESTS / 1024 )) КБ/запрос"
+    else
+        echo "выделено памяти: не измерено, во время прогона была сборка мусора (увеличьте -Xmn или уменьшите количество запросов)"
+    fi
+fi
@@ -0,0 +1,13 @@
+#!/usr/bin/env bash
+# Прогон bench.sh по страницам, отрисовываемым шаблонами Thymeleaf: главная, список клиентов
+# и личный кабинет. Аргументы и переменные окружения те же, что у bench.sh:
+#
+#   PID=$! bench/pages.sh 400 4
+set -euo pipefail
+
+REQUESTS=${1:-400}
+CONCURRENCY=${2:-4}
+
+for page in / /clients /account; do
+    "$(dirname "$0")/bench.sh" GET "$page" "$REQUESTS" "$CONCURRENCY"
+done
@@ -1,18 +1,50 @@
 package ru.gazer.gazer;
 
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
 import org.springframework.context.annotation.Bean;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import ru.gazer.gazer.service.AdaptivePasswordEncoder;
+
+import java.time.Duration;
 
 @SpringBootApplication
+@EnableScheduling
 public class GazerApplication extends SpringBootServletInitializer  {
 
+    /**
+     * Кодировщик паролей. Сложность BCrypt подбирается при запуске под security.password.bcrypt.target,
+     * а емкость очереди хеширования выводится из него, количества потоков и времени ожидания
+     */
+    @Bean(destroyMethod = "shutdown")
+    public AdaptivePasswordEncoder encoder(@Value("${security.password.hashing.threads}") int threads,
+                                           @Value("${security.password.hashing.timeout-ms}") long timeoutMillis,
+                                           @Value("${security.password.bcrypt.target}") Duration target,
+                                           @Value("${security.password.bcrypt.min-strength}") int minStrength,
+                                           @Value("${security.password.bcrypt.max-strength}") int maxStrength,
+                                           MeterRegistry meterRegistry) {
+        AdaptivePasswordEncoder encoder = new AdaptivePasswordEncoder(threads, timeoutMillis, target, minStrength);
+        encoder.calibrate(target, minStrength, maxStrength);
+        new ExecutorServiceMetrics(encoder.getExecutor(), "password.hashing", Tags.empty()).bindTo(meterRegistry);
+        Gauge.builder("password.hashing.strength", encoder, AdaptivePasswordEncoder::getStrength)
+                .description("Сложность BCrypt, выбранная калибровкой")
+                .register(meterRegistry);
+        return encoder;
+    }
 
+    /**
+     * Аспект, измеряющий время методов с аннотацией @Timed
+     */
     @Bean
-    public BCryptPasswordEncoder encoder() {
-        return new BCryptPasswordEncoder();
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
     }
 
     public static void main(String[] args) {
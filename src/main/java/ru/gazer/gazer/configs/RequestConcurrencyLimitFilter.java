@@ -0,0 +1,67 @@
+package ru.gazer.gazer.configs;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фильтр, ограничивающий количество одновременно обрабатываемых запросов. Запрос ждет разрешения
+ * не дольше acquireTimeoutMillis, после чего получает ответ 503. Статические ресурсы не ограничиваются,
+ * потому что не обращаются к базе данных. Не ограничиваются и пути, которые передают файлы и потоки данных:
+ * скачивание документа, загрузка клиента с документом, импорт и экспорт. Их время определяется скоростью
+ * сети клиента, а не базой данных, и разрешение простаивало бы на все время передачи
+ */
+public class RequestConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    /** Пути, передающие файлы и потоки данных */
+    private static final Set<String> STREAMING_PATHS = new HashSet<>(Arrays.asList(
+            "/download", "/addclient", "/import", "/export"));
+
+    /** Разрешения на обработку запроса */
+    private final Semaphore permits;
+
+    /** Сколько миллисекунд запрос ожидает разрешения */
+    private final long acquireTimeoutMillis;
+
+    public RequestConcurrencyLimitFilter(int maxConcurrentRequests, long acquireTimeoutMillis) {
+        this.permits = new Semaphore(maxConcurrentRequests);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getServletPath();
+        return path.startsWith("/css/") || path.startsWith("/img/") || STREAMING_PATHS.contains(path);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ru.gazer.gazer.configs;
+
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.core.convert.support.GenericConversionService;
+import ru.gazer.gazer.service.SessionAttributeSerializer;
+import ru.gazer.gazer.service.UserService;
+
+/**
+ * Конфигурация общего хранилища сессий. Хранилище выбирается свойством spring.session.store-type,
+ * для jdbc сессии хранятся в таблицах SPRING_SESSION и SPRING_SESSION_ATTRIBUTES основной базы данных,
+ * поэтому любой узел может обслужить любой запрос без привязки пользователя к узлу.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.session.store-type", havingValue = "jdbc")
+public class SessionConfig implements BeanClassLoaderAware {
+
+    private ClassLoader classLoader;
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Сервис преобразования атрибутов сессии в байты и обратно, используемый JdbcIndexedSessionRepository
+     */
+    @Bean("springSessionConversionService")
+    public ConversionService springSessionConversionService(@Lazy UserService userService,
+                                                            @Value("${security.remember-me.key}") String rememberMeKey) {
+        SessionAttributeSerializer serializer = new SessionAttributeSerializer(userService, rememberMeKey, classLoader);
+        GenericConversionService conversionService = new GenericConversionService();
+        conversionService.addConverter(Object.class, byte[].class, (Converter<Object, byte[]>) serializer::serialize);
+        conversionService.addConverter(byte[].class, Object.class, (Converter<byte[], Object>) serializer::deserialize);
+        return conversionService;
+    }
+}
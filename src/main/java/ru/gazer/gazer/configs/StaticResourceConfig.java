@@ -0,0 +1,36 @@
+package ru.gazer.gazer.configs;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Раздача статических ресурсов из каталогов css и img. Ссылки на ресурсы дополняются хешем содержимого,
+ * ответы кешируются браузером на год, а style.css отдается сжатой копией style.css.gz.
+ * Обработчики зарегистрированы только для этих каталогов (spring.web.resources.add-mappings=false):
+ * ResourceUrlEncodingFilter ищет ресурс для каждой ссылки страницы, и при обработчике для /**
+ * ссылки вроде /download?id= искались бы в classpath при каждой отрисовке
+ */
+@Configuration
+public class StaticResourceConfig implements WebMvcConfigurer {
+
+    /** Каталоги статических ресурсов */
+    private static final String[] FOLDERS = {"css", "img"};
+
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        for (String folder : FOLDERS) {
+            registry.addResourceHandler("/" + folder + "/**")
+                    .addResourceLocations("classpath:/static/" + folder + "/")
+                    .setCacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic())
+                    .resourceChain(true)
+                    .addResolver(new EncodedResourceResolver())
+                    .addResolver(new VersionResourceResolver().addContentVersionStrategy("/**"));
+        }
+    }
+}
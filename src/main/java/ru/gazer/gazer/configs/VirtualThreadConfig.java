@@ -0,0 +1,61 @@
+package ru.gazer.gazer.configs;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Режим выполнения запросов в виртуальных потоках. Включается свойством server.virtual-threads.enabled=true
+ * и требует запуска на JDK 21 или новее: исполнитель создается через отражение, поэтому приложение
+ * по-прежнему собирается для Java 8. Каждый запрос встроенного Tomcat выполняется в своем виртуальном потоке,
+ * и ожидание JDBC, файлов и хеширования паролей не занимает потоки платформы.
+ * Количество одновременно обрабатываемых запросов ограничивается RequestConcurrencyLimitFilter
+ * исходя из размера пула соединений, чтобы запросы ждали разрешения, а не соединения с базой данных.
+ */
+@Configuration
+@ConditionalOnProperty(name = "server.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    /**
+     * Исполнитель, создающий виртуальный поток на каждую задачу
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Виртуальные потоки требуют JDK 21 или новее, запущено на Java "
+                    + System.getProperty("java.version"), e);
+        }
+    }
+
+    /**
+     * Настройка, передающая обработку соединений Tomcat исполнителю виртуальных потоков
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    /**
+     * Ограничение одновременно обрабатываемых запросов: requests-per-connection запросов на одно соединение
+     * пула. Фильтр стоит перед Spring Security, потому что вход по remember-me тоже обращается к базе данных
+     */
+    @Bean
+    public FilterRegistrationBean<RequestConcurrencyLimitFilter> requestConcurrencyLimitFilter(
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+            @Value("${server.virtual-threads.requests-per-connection}") int requestsPerConnection,
+            @Value("${server.virtual-threads.acquire-timeout-ms}") long acquireTimeoutMillis) {
+        FilterRegistrationBean<RequestConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(
+                new RequestConcurrencyLimitFilter(poolSize * requestsPerConnection, acquireTimeoutMillis));
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 1);
+        return registration;
+    }
+}
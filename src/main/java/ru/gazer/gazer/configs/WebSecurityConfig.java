@@ -1,12 +1,16 @@
 package ru.gazer.gazer.configs;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 import ru.gazer.gazer.service.UserService;
 
 /**
@@ -18,23 +22,37 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
     /** Экземпляр класса UserService */
     @Autowired
     UserService userService;
-    /** Экземпляр класса BCryptPasswordEncoder */
+    /** Экземпляр класса PasswordEncoder */
     @Autowired
-    BCryptPasswordEncoder encoder;
+    PasswordEncoder encoder;
+    /** Ключ подписи cookie remember-me из переменной REMEMBER_ME_KEY. Должен совпадать на всех узлах */
+    @Value("${security.remember-me.key}")
+    String rememberMeKey;
 
     /**
      * Метод устанавливает разграничение доступа к страницам веб-приложения,
-     * а также конфигурирует процесс авторизации и выхода из аккаунта
+     * а также конфигурирует процесс авторизации и выхода из аккаунта.
+     * JSON API доступно также с HTTP Basic авторизацией. Контекст безопасности сохраняется в сессии,
+     * поэтому клиент, передающий cookie сессии, проверяет пароль только в первом запросе.
+     * Неавторизованные запросы к API получают ответ 401 вместо перенаправления на страницу входа.
+     * Метрики для Prometheus доступны без авторизации: порт управления слушает только локальный адрес
      */
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         http
             .csrf().disable()
                 .authorizeRequests()
+                .antMatchers("/actuator/health", "/actuator/prometheus").permitAll()
                 .antMatchers("/addclient", "/clients", "/account",
-                        "/download", "/update", "/findbypass", "/findbyname",
-                        "/deleteuser", "/delete", "/createPresent20").hasAuthority("USER")
+                        "/download", "/update", "/findbypass", "/findbyname", "/search",
+                        "/deleteuser", "/delete", "/import", "/export", "/createPresent20", "/actuator/**", "/api/**").hasAuthority("USER")
                 .antMatchers("/home", "/register").permitAll()
+           .and()
+            .httpBasic()
+           .and()
+            .exceptionHandling()
+                .defaultAuthenticationEntryPointFor(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED),
+                        new AntPathRequestMatcher("/api/**"))
            .and()
             .formLogin()
                .loginPage("/login")
@@ -46,6 +64,7 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
             .rememberMe()
                 .tokenValiditySeconds(60*60*24)
                 .rememberMeParameter("remember-me")
+                .key(rememberMeKey)
             .and()
             .logout()
                 .permitAll()
@@ -57,6 +76,8 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 
     /**
      * В методе конфигурируется хранилище пользователей для авторизации.
+     * UserService также реализует UserDetailsPasswordService, поэтому хеши паролей
+     * с устаревшей сложностью пересчитываются при успешном входе.
      */
     @Override
     protected void configure(AuthenticationManagerBuilder auth) throws Exception {
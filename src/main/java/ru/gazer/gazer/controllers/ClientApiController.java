@@ -0,0 +1,146 @@
+package ru.gazer.gazer.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import ru.gazer.gazer.models.Client;
+import ru.gazer.gazer.models.ClientSnapshot;
+import ru.gazer.gazer.models.ClientView;
+import ru.gazer.gazer.models.User;
+import ru.gazer.gazer.service.ClientPage;
+import ru.gazer.gazer.service.ClientResultCache;
+import ru.gazer.gazer.service.ClientService;
+
+import javax.validation.Valid;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Класс - контроллер JSON API клиентов. Выборки возвращают слабый ETag, составленный из версий клиентов
+ * пользователя и общих клиентов. Если версия не изменилась, то на запрос с заголовком If-None-Match
+ * возвращается ответ 304 без обращения к базе данных
+ */
+@RestController
+@RequestMapping("/api/v1/clients")
+public class ClientApiController {
+
+    /** Ответы выборок кешируются только клиентом и перед использованием проверяются на сервере */
+    private static final CacheControl CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
+    /** Экземпляр класса ClientService */
+    @Autowired
+    private ClientService clientService;
+
+    /** Кеш результатов выборки клиентов, хранящий версии данных пользователей */
+    @Autowired
+    private ClientResultCache clientResultCache;
+
+    /**
+     * Метод возвращает страницу клиентов пользователя и общих клиентов. Если передан параметр after
+     * (значение after предыдущей страницы), то страница выбирается поиском по ключу, без OFFSET
+     */
+    @GetMapping
+    public ResponseEntity<ClientPage> getClients(@RequestParam(value = "page", defaultValue = "0") Integer page,
+                                                 @RequestParam(value = "after", required = false) Integer after,
+                                                 @AuthenticationPrincipal User user, WebRequest request) {
+        return conditional(user, request, () -> new ClientPage(after == null
+                ? clientService.getClientsPage(Math.max(page, 0), user.getId())
+                : clientService.getClientsPageAfter(Math.max(page, 0), after, user.getId())));
+    }
+
+    /**
+     * Метод возвращает клиента пользователя или общего клиента. Возвращает 404, если клиент
+     * не найден или принадлежит другому пользователю
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<ClientView> getClient(@PathVariable("id") Integer id, @AuthenticationPrincipal User user) {
+        return clientService.getClient(id, user.getId())
+                .map(client -> ResponseEntity.ok().cacheControl(CACHE_CONTROL).body(client))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Метод ищет клиентов по словам запроса, как на странице search
+     */
+    @GetMapping("/search")
+    public ResponseEntity<ClientPage> search(@RequestParam("q") String query,
+                                             @AuthenticationPrincipal User user, WebRequest request) {
+        return conditional(user, request, () -> new ClientPage(clientService.search(query, user.getId())));
+    }
+
+    /**
+     * Метод ищет клиентов по имени и фамилии
+     */
+    @GetMapping("/by-name")
+    public ResponseEntity<ClientPage> findByName(@RequestParam("firstName") String firstName,
+                                                 @RequestParam("lastName") String lastName,
+                                                 @AuthenticationPrincipal User user, WebRequest request) {
+        return conditional(user, request, () -> new ClientPage(clientService.getByName(firstName, lastName, user.getId())));
+    }
+
+    /**
+     * Метод ищет клиента по паспортным данным
+     */
+    @GetMapping("/by-passport")
+    public ResponseEntity<ClientPage> findByPassport(@RequestParam("passportSeries") String passportSeries,
+                                                     @RequestParam("passportNumber") String passportNumber,
+                                                     @AuthenticationPrincipal User user, WebRequest request) {
+        return conditional(user, request, () -> new ClientPage(clientService.getByPassport(passportSeries, passportNumber, user.getId())));
+    }
+
+    /**
+     * Метод добавляет клиента пользователя без документа. Возвращает 201 и добавленного клиента
+     * или 409, если паспортные данные уже заняты
+     */
+    @PostMapping
+    public ResponseEntity<?> addClient(@Valid @RequestBody Client client, @AuthenticationPrincipal User user) {
+        client.setClientId(null);
+        client.setDocumentId(null);
+        Map<Integer, String> rejected = clientService.saveClients(Collections.singletonList(client), user.getId());
+        if (!rejected.isEmpty())
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Collections.singletonMap("error", rejected.get(0)));
+        return ResponseEntity.created(ServletUriComponentsBuilder.fromCurrentRequest()
+                        .path("/{id}").buildAndExpand(client.getClientId()).toUri())
+                .body(ClientSnapshot.of(client));
+    }
+
+    /**
+     * Метод удаляет клиента пользователя. Возвращает 404, если у пользователя нет такого клиента
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteClient(@PathVariable("id") Integer id, @AuthenticationPrincipal User user) {
+        return clientService.deleteClient(id, user.getId())
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Метод удаляет клиентов пользователя с перечисленными id одним запросом к базе данных
+     * и возвращает количество удаленных клиентов или 400, если различных id больше ClientService.MAX_DELETE_IDS
+     */
+    @DeleteMapping
+    public ResponseEntity<Map<String, ?>> deleteClients(@RequestParam("ids") List<Integer> ids, @AuthenticationPrincipal User user) {
+        if (ClientService.exceedsDeleteLimit(ids))
+            return ResponseEntity.badRequest().body(Collections.singletonMap("error",
+                    "Можно удалить не больше " + ClientService.MAX_DELETE_IDS + " клиентов за один запрос"));
+        return ResponseEntity.ok(Collections.singletonMap("deleted", clientService.deleteClients(ids, user.getId())));
+    }
+
+    /**
+     * Метод сравнивает ETag данных пользователя с заголовком If-None-Match. Если они совпадают,
+     * то возвращается ответ 304, и выборка не выполняется
+     */
+    private ResponseEntity<ClientPage> conditional(User user, WebRequest request, Supplier<ClientPage> loader) {
+        String etag = clientResultCache.etag(user.getId());
+        if (request.checkNotModified(etag))
+            return null;
+        return ResponseEntity.ok().eTag(etag).cacheControl(CACHE_CONTROL).body(loader.get());
+    }
+}
@@ -1,26 +1,41 @@
 package ru.gazer.gazer.controllers;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.gazer.gazer.models.Client;
+import ru.gazer.gazer.models.ClientView;
+import ru.gazer.gazer.service.AccountDeletionService;
+import ru.gazer.gazer.service.ClientExportService;
+import ru.gazer.gazer.service.ClientImportService;
 import ru.gazer.gazer.service.ClientService;
+import ru.gazer.gazer.service.ClientUploadResult;
+import ru.gazer.gazer.service.ClientUploadService;
+import ru.gazer.gazer.service.DocumentDownloadService;
+import ru.gazer.gazer.service.DocumentService;
+import ru.gazer.gazer.service.StoredDocument;
 import ru.gazer.gazer.service.UserService;
 import ru.gazer.gazer.models.User;
 import ru.gazer.gazer.models.Role;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * Класс - контроллер. Обрабатывает входящие Get и Post запросы.
@@ -38,11 +53,29 @@ public class GazerController {
     @Autowired
     private ClientService clientService;
 
-    /** Пусть к папке, в которой лежат файлы с информацией о пользователях.
-     * Путь задается в application.properties
-     */
-    @Value("${document.folder}")
-    String docsPath;
+    /** Экземпляр класса ClientImportService */
+    @Autowired
+    private ClientImportService clientImportService;
+
+    /** Экземпляр класса ClientExportService */
+    @Autowired
+    private ClientExportService clientExportService;
+
+    /** Экземпляр класса ClientUploadService */
+    @Autowired
+    private ClientUploadService clientUploadService;
+
+    /** Экземпляр класса DocumentService */
+    @Autowired
+    private DocumentService documentService;
+
+    /** Экземпляр класса DocumentDownloadService */
+    @Autowired
+    private DocumentDownloadService documentDownloadService;
+
+    /** Экземпляр класса AccountDeletionService */
+    @Autowired
+    private AccountDeletionService accountDeletionService;
 
 
     /**
@@ -91,10 +124,14 @@ public class GazerController {
 
     /**
      * Метод загружает страницу с клиентами. Принимает request параметр с номером страницы.
-     * Если параметр не указан, то загружает первую страницу
+     * Если параметр не указан, то загружает первую страницу. Если указан параметр after или before
+     * (clientId последней или первой записи на текущей странице), то страница выбирается поиском по ключу,
+     * без OFFSET, и номер страницы используется только для отображения
      */
     @GetMapping("/clients")
         public String getClientsPage(@RequestParam(value = "page", required = false) String pageStr,
+                                     @RequestParam(value = "after", required = false) Integer after,
+                                     @RequestParam(value = "before", required = false) Integer before,
                                      Model model,
                                      @AuthenticationPrincipal User user) {
             Integer pageNum;
@@ -103,37 +140,85 @@ public class GazerController {
             } catch (Exception e) {
                 pageNum = 0;
             }
-            Slice<Client> clientsPage = clientService.getClientsPage(pageNum, user.getId());
-            model.addAttribute("clients", clientsPage.getContent());
+            Slice<ClientView> clientsPage;
+            if (after != null)
+                clientsPage = clientService.getClientsPageAfter(pageNum, after, user.getId());
+            else if (before != null)
+                clientsPage = clientService.getClientsPageBefore(pageNum, before, user.getId());
+            else
+                clientsPage = clientService.getClientsPage(pageNum, user.getId());
+            List<ClientView> clients = clientsPage.getContent();
+            model.addAttribute("clients", clients);
             if (clientsPage.hasNext())
                 model.addAttribute("hasNext", "");
             if (clientsPage.hasPrevious())
                 model.addAttribute("hasPrevious", "");
-            model.addAttribute("currentPage", pageNum);
+            if (!clients.isEmpty()) {
+                model.addAttribute("firstId", clients.get(0).getClientId());
+                model.addAttribute("lastId", clients.get(clients.size() - 1).getClientId());
+            }
+            model.addAttribute("currentPage", clientsPage.getNumber());
             model.addAttribute("user", user);
             return "clients";
         }
 
     /**
-     * Метод возвращает файл клиента для загрузки
+     * Метод возвращает файл клиента для загрузки. Поддерживаются докачка (заголовок Range)
+     * и условные запросы (If-None-Match, If-Modified-Since). Файл отдается, только если клиент
+     * принадлежит пользователю или является общим
      */
     @GetMapping("/download")
-    public ResponseEntity<InputStreamResource> downloadClientFile(Model model, @RequestParam("id") Integer id) throws Exception {
-        File file = new File(docsPath + id + ".pdf");
-        InputStreamResource resource = new InputStreamResource(new FileInputStream(file));
+    public void downloadClientFile(@RequestParam("id") Integer id, @AuthenticationPrincipal User user,
+                                   HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<StoredDocument> document = documentService.findClientDocument(id, user.getId());
+        if (!document.isPresent()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        documentDownloadService.send(document.get(), id + ".pdf", request, response);
+    }
+
+    /**
+     * Метод выгружает всех клиентов пользователя в формате CSV или NDJSON (format=json).
+     * Записи пишутся в ответ по мере чтения из базы данных, не дожидаясь загрузки всего списка
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportClients(@RequestParam(value = "format", defaultValue = "csv") String format,
+                                                               @AuthenticationPrincipal User user) {
+        Integer userId = user.getId();
+        boolean json = "json".equalsIgnoreCase(format);
+        StreamingResponseBody body = out -> {
+            if (json)
+                clientExportService.exportJson(userId, out);
+            else
+                clientExportService.exportCsv(userId, out);
+        };
         return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment;filename=" + file.getName())
-                .contentType(MediaType.parseMediaType("application/pdf"))
-                .contentLength(file.length())
-                .body(resource);
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment;filename=clients." + (json ? "ndjson" : "csv"))
+                .contentType(MediaType.parseMediaType(json ? "application/x-ndjson" : "text/csv;charset=UTF-8"))
+                .body(body);
     }
 
     /**
-     * Метод удаляет клиента из базы данных
+     * Метод удаляет клиента пользователя из базы данных
      */
     @GetMapping("/delete")
-    public String deleteClient(@RequestParam("id") Integer id) {
-        clientService.deleteClient(id);
+    public String deleteClient(@RequestParam("id") Integer id, @AuthenticationPrincipal User user) {
+        clientService.deleteClient(id, user.getId());
+        return "redirect:/clients";
+    }
+
+    /**
+     * Метод удаляет выбранных на странице клиентов пользователя одним запросом к базе данных.
+     * Форма, в которой различных id больше ClientService.MAX_DELETE_IDS, отклоняется ответом 400
+     */
+    @PostMapping("/delete")
+    public String deleteClients(@RequestParam(value = "ids", required = false) List<Integer> ids,
+                                @AuthenticationPrincipal User user) {
+        if (ids != null && ClientService.exceedsDeleteLimit(ids))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        if (ids != null)
+            clientService.deleteClients(ids, user.getId());
         return "redirect:/clients";
     }
 
@@ -147,49 +232,80 @@ public class GazerController {
     }
 
     /**
-     * Метод удаляет из базы данных пользователя и всех добавленных им клиентов
+     * Метод удаляет из базы данных пользователя и выполняет выход из аккаунта.
+     * Клиенты и документы пользователя удаляются в фоне
      */
     @GetMapping("/deleteuser")
     public String deleteUser(@AuthenticationPrincipal User user) {
-        clientService.deleteUserClients(user.getId());
-        userService.deleteUser(user);
+        accountDeletionService.deleteAccount(user);
         return "redirect:/logout";
     }
 
     /**
      * Метод добавляет в базу данных нового клиента и перенаправляет пользователя
-     * на страницу clients
+     * на страницу clients. Форма читается из тела запроса как поток: файл проверяется
+     * и записывается в хранилище документов по мере загрузки. Занятость паспортных данных
+     * определяется при сохранении
      */
     @PostMapping("/addclient")
-    public String addClient(@Valid Client client, BindingResult errors, Model model,
-                            @RequestParam("file") MultipartFile file,
-                            @AuthenticationPrincipal User user) {
-        System.out.println(file.getContentType());
-        boolean isFileValid = file.getContentType().equals("application/pdf") ? true : false;
-        boolean isPassValid = !clientService.isPassportUsed(client.getPassportSeries(), client.getPassportNumber(), user.getId());
-        if (!isPassValid)
-            model.addAttribute("error2", "badpass");
-        if (!isFileValid)
-            model.addAttribute("error1", "badfile");
-        if (errors.hasErrors() || !isFileValid || !isPassValid) {
-            model.addAttribute("user", user);
-            return "addclient";
-        } else {
-            clientService.saveClient(client, file, user.getId(), docsPath);
+    public String addClient(HttpServletRequest request, Model model,
+                            @AuthenticationPrincipal User user) throws IOException {
+        ClientUploadResult upload = clientUploadService.addClient(request, user.getId());
+        if (upload.getOutcome() == ClientUploadResult.Outcome.SAVED)
             return "redirect:/clients";
+        model.addAllAttributes(upload.getBindingResult().getModel());
+        if (upload.getOutcome() == ClientUploadResult.Outcome.NOT_PDF)
+            model.addAttribute("error1", "badfile");
+        if (upload.getOutcome() == ClientUploadResult.Outcome.PASSPORT_USED)
+            model.addAttribute("error2", "badpass");
+        if (upload.getOutcome() == ClientUploadResult.Outcome.TOO_LARGE)
+            model.addAttribute("error3", "bigfile");
+        model.addAttribute("user", user);
+        return "addclient";
+    }
+
+    /**
+     * Метод возвращает страницу с формой массового импорта клиентов из CSV файла
+     */
+    @GetMapping("/import")
+    public String getImportPage(Model model, @AuthenticationPrincipal User user) {
+        model.addAttribute("user", user);
+        return "import";
+    }
+
+    /**
+     * Метод импортирует клиентов из CSV файла и возвращает страницу с отчетом об ошибках по строкам
+     */
+    @PostMapping("/import")
+    public String importClients(@RequestParam("file") MultipartFile file, Model model,
+                                @AuthenticationPrincipal User user) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            model.addAttribute("report", clientImportService.importCsv(in, user.getId()));
         }
+        model.addAttribute("user", user);
+        return "import";
     }
 
     /**
      * Метод добавляет нового пользователя в базу данных и перенаправляет посетителя
-     * на главную страницу сайта
+     * на главную страницу сайта. Если хеширование пароля отклонено из-за нагрузки, то страница регистрации
+     * возвращается с кодом 503 и просьбой повторить попытку
      */
     @PostMapping("/register")
-    public String registerUser(@Valid User user, BindingResult errors, Model model) {
+    public String registerUser(@Valid User user, BindingResult errors, Model model, HttpServletResponse response) {
         if (errors.hasErrors()) {
             return "register";
         } else {
-            if (userService.saveUser(user)) {
+            boolean saved;
+            try {
+                saved = userService.saveUser(user);
+            } catch (AuthenticationServiceException e) {
+                response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+                response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+                model.addAttribute("busyError", "");
+                return "register";
+            }
+            if (saved) {
                 return "redirect:/";
             } else {
                 model.addAttribute("error", "wp");
@@ -205,7 +321,7 @@ public class GazerController {
     @PostMapping("/findbyname")
     public String findByName(@RequestParam("firstName") String firstName, @RequestParam("lastName") String lastName,
                              @AuthenticationPrincipal User user, Model model) {
-        Slice<Client> clientsPage = clientService.getByName(firstName, lastName, user.getId());
+        Slice<ClientView> clientsPage = clientService.getByName(firstName, lastName, user.getId());
         model.addAttribute("back", "");
         model.addAttribute("clients", clientsPage.getContent());
         model.addAttribute("user", user);
@@ -220,7 +336,20 @@ public class GazerController {
     public String findByPass(@RequestParam("passportSeries") String passportSeries,
                              @RequestParam("passportNumber") String passportNumber,
                              @AuthenticationPrincipal User user, Model model) {
-        Slice<Client> clientsPage = clientService.getByPassport(passportSeries, passportNumber, user.getId());
+        Slice<ClientView> clientsPage = clientService.getByPassport(passportSeries, passportNumber, user.getId());
+        model.addAttribute("back", "");
+        model.addAttribute("clients", clientsPage.getContent());
+        model.addAttribute("user", user);
+        return "clients";
+    }
+
+    /**
+     * Метод ищет клиентов по словам запроса сразу во всех полях и возвращает их странице clients
+     * для отображения
+     */
+    @GetMapping("/search")
+    public String search(@RequestParam("q") String query, @AuthenticationPrincipal User user, Model model) {
+        Slice<ClientView> clientsPage = clientService.search(query, user.getId());
         model.addAttribute("back", "");
         model.addAttribute("clients", clientsPage.getContent());
         model.addAttribute("user", user);
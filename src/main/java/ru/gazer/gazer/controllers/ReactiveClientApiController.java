@@ -0,0 +1,65 @@
+package ru.gazer.gazer.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import ru.gazer.gazer.models.ClientSnapshot;
+import ru.gazer.gazer.models.User;
+import ru.gazer.gazer.service.ReactiveClientSearch;
+
+/**
+ * Класс - контроллер потоковых путей чтения JSON API. Ответ передается в формате application/x-ndjson,
+ * по одному клиенту в строке. Spring MVC подписывается на Flux в асинхронном режиме сервлета: поток запроса
+ * освобождается на время ожидания базы данных, а следующая запись запрашивается после записи предыдущей.
+ * Сами записи выполняются блокирующим вводом-выводом сервлета в потоках асинхронного исполнителя Spring MVC
+ * (applicationTaskExecutor), и поток занят, пока медленный клиент не примет данные. Исполнитель общий с выгрузкой
+ * /export и настроен явно свойствами spring.task.execution.pool.*: количество потоков ограничивает число
+ * одновременно пишущих потоковых ответов, а очередь ограничена, поэтому сверх нее задачи отклоняются,
+ * и запрос завершается ошибкой, а не ждет без ограничения
+ */
+@RestController
+@RequestMapping(value = "/api/v1/stream/clients", produces = MediaType.APPLICATION_NDJSON_VALUE)
+@ConditionalOnProperty(name = "clients.reactive.enabled", havingValue = "true")
+public class ReactiveClientApiController {
+
+    /** Экземпляр класса ReactiveClientSearch */
+    @Autowired
+    private ReactiveClientSearch reactiveClientSearch;
+
+    /**
+     * Метод возвращает клиентов пользователя и общих клиентов после clientId, равного after
+     */
+    @GetMapping
+    public Flux<ClientSnapshot> getClients(@RequestParam(value = "after", required = false) Integer after,
+                                           @RequestParam(value = "limit", defaultValue = "100") Integer limit,
+                                           @AuthenticationPrincipal User user) {
+        return reactiveClientSearch.getClients(user.getId(), after, limit);
+    }
+
+    /**
+     * Метод ищет клиентов по имени и фамилии
+     */
+    @GetMapping("/by-name")
+    public Flux<ClientSnapshot> findByName(@RequestParam("firstName") String firstName,
+                                           @RequestParam("lastName") String lastName,
+                                           @RequestParam(value = "limit", defaultValue = "100") Integer limit,
+                                           @AuthenticationPrincipal User user) {
+        return reactiveClientSearch.getByName(firstName, lastName, user.getId(), limit);
+    }
+
+    /**
+     * Метод ищет клиентов по паспортным данным
+     */
+    @GetMapping("/by-passport")
+    public Flux<ClientSnapshot> findByPassport(@RequestParam("passportSeries") String passportSeries,
+                                               @RequestParam("passportNumber") String passportNumber,
+                                               @AuthenticationPrincipal User user) {
+        return reactiveClientSearch.getByPassport(passportSeries, passportNumber, user.getId());
+    }
+}
@@ -0,0 +1,33 @@
+package ru.gazer.gazer.models;
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+
+/**
+ * Класс - сущность, на основе которого создается таблица account_deletions в базе данных.
+ * Запись - задание на удаление клиентов и документов удаленного пользователя. Задание удаляется
+ * после удаления последнего клиента, поэтому прерванное удаление продолжается после перезапуска приложения.
+ * Узел, выполняющий удаление, закрепляет задание за собой до leaseUntil и продлевает срок после каждой пачки.
+ */
+@Getter
+@Setter
+@NoArgsConstructor(force = true)
+@RequiredArgsConstructor
+@Entity
+@Table(name = "account_deletions")
+public class AccountDeletion {
+
+    @Id
+    @NonNull
+    private Integer userId;
+    /** Количество уже удаленных клиентов */
+    private long deletedClients;
+    /** Узел, выполняющий удаление */
+    @Column(length = 36)
+    private String owner;
+    /** Момент, до которого задание закреплено за узлом owner */
+    private Instant leaseUntil;
+
+}
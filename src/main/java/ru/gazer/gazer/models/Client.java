@@ -15,14 +15,21 @@ import javax.validation.constraints.Size;
 @NoArgsConstructor(force = true)
 @RequiredArgsConstructor
 @Entity
-@Table(name = "clients")
+@Table(name = "clients",
+        uniqueConstraints = {
+        @UniqueConstraint(name = "unique_user_passport", columnNames = {"userId", "passportSeries", "passportNumber"})
+        },
+        indexes = {
+        @Index(name = "idx_clients_user_id_client_id", columnList = "userId, clientId"),
+        @Index(name = "idx_clients_user_id_name", columnList = "userId, lastName, firstName")
+        })
 @Validated
 public class Client {
     @Id
     @SequenceGenerator(
             name = "client_id_sequence",
             sequenceName = "client_id_sequence",
-            allocationSize = 1
+            allocationSize = 50
     )
     @GeneratedValue(
             strategy = GenerationType.SEQUENCE, generator = "client_id_sequence"
@@ -50,5 +57,7 @@ public class Client {
     private  String phone;
     @NonNull
     private  Integer userId;
+    @Column(length = 64)
+    private String documentId;
 
 }
@@ -0,0 +1,41 @@
+package ru.gazer.gazer.models;
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+
+/**
+ * Класс - сущность, на основе которого создается таблица client_changes в базе данных.
+ * Запись - отметка о том, что клиент сохранен или удален. Отметка создается в транзакции изменения,
+ * а каждый узел периодически читает новые отметки и приводит свои индексы поиска к состоянию таблицы clients.
+ * Отметки удаляются, когда их уже прочитали все узлы.
+ */
+@Getter
+@Setter
+@NoArgsConstructor(force = true)
+@RequiredArgsConstructor
+@Entity
+@Table(name = "client_changes",
+        indexes = @Index(name = "idx_client_changes_changed_at", columnList = "changedAt"))
+public class ClientChange {
+
+    @Id
+    @SequenceGenerator(
+            name = "client_change_id_sequence",
+            sequenceName = "client_change_id_sequence",
+            allocationSize = 50
+    )
+    @GeneratedValue(
+            strategy = GenerationType.SEQUENCE, generator = "client_change_id_sequence"
+    )
+    private Long changeId;
+    @NonNull
+    private Integer clientId;
+    @NonNull
+    private Integer userId;
+    /** Момент изменения */
+    @NonNull
+    private Instant changedAt;
+
+}
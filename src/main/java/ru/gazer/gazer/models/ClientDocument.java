@@ -0,0 +1,13 @@
+package ru.gazer.gazer.models;
+
+/**
+ * Интерфейсная проекция записи таблицы clients, содержащая только владельца и ссылку на документ клиента
+ */
+public interface ClientDocument {
+
+    Integer getClientId();
+
+    Integer getUserId();
+
+    String getDocumentId();
+}
@@ -0,0 +1,11 @@
+package ru.gazer.gazer.models;
+
+/**
+ * Проекция, связывающая клиента с текстом его документа
+ */
+public interface ClientDocumentText {
+
+    Integer getClientId();
+
+    String getText();
+}
@@ -0,0 +1,43 @@
+package ru.gazer.gazer.models;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Неизменяемая копия записи таблицы clients. Используется как проекция в методах выборки ClientRepository:
+ * Spring Data вызывает конструктор с выбранными столбцами, а не создает прокси интерфейса для каждой строки,
+ * и как копия клиентов, хранящаяся в памяти приложения.
+ */
+@Getter
+@EqualsAndHashCode
+@RequiredArgsConstructor
+public class ClientSnapshot implements ClientView {
+    private final Integer clientId;
+    private final String firstName;
+    private final String lastName;
+    private final String sex;
+    private final String age;
+    private final String passportSeries;
+    private final String passportNumber;
+    private final String phone;
+    private final Integer userId;
+
+    /**
+     * Метод создает копию проекции записи таблицы clients
+     */
+    public static ClientSnapshot of(ClientView client) {
+        return new ClientSnapshot(client.getClientId(), client.getFirstName(), client.getLastName(),
+                client.getSex(), client.getAge(), client.getPassportSeries(), client.getPassportNumber(),
+                client.getPhone(), client.getUserId());
+    }
+
+    /**
+     * Метод создает копию сущности Client
+     */
+    public static ClientSnapshot of(Client client) {
+        return new ClientSnapshot(client.getClientId(), client.getFirstName(), client.getLastName(),
+                client.getSex(), client.getAge(), client.getPassportSeries(), client.getPassportNumber(),
+                client.getPhone(), client.getUserId());
+    }
+}
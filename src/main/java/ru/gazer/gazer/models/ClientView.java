@@ -0,0 +1,27 @@
+package ru.gazer.gazer.models;
+
+/**
+ * Запись таблицы clients для страниц, которые только отображают клиентов. Реализуется классом ClientSnapshot,
+ * в который ClientRepository выбирает лишь перечисленные столбцы, не помещая сущности Client
+ * в контекст персистентности, поэтому для них не создаются снимки для dirty checking.
+ */
+public interface ClientView {
+
+    Integer getClientId();
+
+    String getFirstName();
+
+    String getLastName();
+
+    String getSex();
+
+    String getAge();
+
+    String getPassportSeries();
+
+    String getPassportNumber();
+
+    String getPhone();
+
+    Integer getUserId();
+}
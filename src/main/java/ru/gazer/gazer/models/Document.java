@@ -0,0 +1,28 @@
+package ru.gazer.gazer.models;
+import lombok.*;
+
+import javax.persistence.*;
+
+
+/**
+ * Класс - сущность, на основе которого создается таблица documents в базе данных.
+ * Запись описывает файл в хранилище документов. Идентификатором служит SHA-256 содержимого,
+ * поэтому одинаковые файлы хранятся один раз, а refCount показывает, сколько клиентов на них ссылается.
+ */
+@Getter
+@Setter
+@NoArgsConstructor(force = true)
+@RequiredArgsConstructor
+@Entity
+@Table(name = "documents")
+public class Document {
+    @Id
+    @NonNull
+    @Column(length = 64)
+    private String documentId;
+    @NonNull
+    private Long size;
+    @NonNull
+    private Integer refCount;
+
+}
@@ -0,0 +1,56 @@
+package ru.gazer.gazer.models;
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+
+/**
+ * Класс - сущность, на основе которого создается таблица document_jobs в базе данных.
+ * Запись - задание на обработку сохраненного документа (извлечение текста). Незавершенные задания
+ * переживают перезапуск приложения. Узел забирает задание, закрепляя его за собой до leaseUntil:
+ * если узел остановится, не завершив обработку, то после этого момента задание заберет другой узел.
+ * Обработанное задание остается в состоянии DONE, пока его не увидят все узлы.
+ */
+@Getter
+@Setter
+@NoArgsConstructor(force = true)
+@RequiredArgsConstructor
+@Entity
+@Table(name = "document_jobs",
+        indexes = {
+        @Index(name = "idx_document_jobs_state_job_id", columnList = "state, jobId"),
+        @Index(name = "idx_document_jobs_state_completed_at", columnList = "state, completedAt")
+        })
+public class DocumentJob {
+
+    /** Состояние задания */
+    public enum State { PENDING, RUNNING, DONE, FAILED }
+
+    @Id
+    @SequenceGenerator(
+            name = "document_job_id_sequence",
+            sequenceName = "document_job_id_sequence",
+            allocationSize = 50
+    )
+    @GeneratedValue(
+            strategy = GenerationType.SEQUENCE, generator = "document_job_id_sequence"
+    )
+    private Long jobId;
+    @NonNull
+    @Column(length = 64)
+    private String documentId;
+    @NonNull
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private State state;
+    private int attempts;
+    /** Узел, обрабатывающий задание */
+    @Column(length = 36)
+    private String owner;
+    /** Момент, до которого задание закреплено за узлом owner */
+    private Instant leaseUntil;
+    /** Момент завершения обработки */
+    private Instant completedAt;
+
+}
@@ -0,0 +1,28 @@
+package ru.gazer.gazer.models;
+import lombok.*;
+
+import javax.persistence.*;
+
+
+/**
+ * Класс - сущность, на основе которого создается таблица document_texts в базе данных.
+ * Хранит количество страниц и текст, извлеченные из PDF документа
+ */
+@Getter
+@Setter
+@NoArgsConstructor(force = true)
+@RequiredArgsConstructor
+@Entity
+@Table(name = "document_texts")
+public class DocumentText {
+    @Id
+    @NonNull
+    @Column(length = 64)
+    private String documentId;
+    @NonNull
+    private Integer pageCount;
+    @NonNull
+    @Column(columnDefinition = "text")
+    private String text;
+
+}
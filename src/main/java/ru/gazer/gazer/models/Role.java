@@ -5,6 +5,8 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.springframework.security.core.GrantedAuthority;
 
 import javax.persistence.*;
@@ -12,6 +14,7 @@ import java.util.Set;
 
 /**
  * Класс - сущность, на основе которого создается таблица user_roles в базе данных.
+ * Роли не изменяются приложением, поэтому хранятся в кеше второго уровня в режиме только для чтения.
  */
 @Getter
 @Setter
@@ -19,6 +22,8 @@ import java.util.Set;
 @RequiredArgsConstructor
 @Entity
 @Table (name = "user_roles")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = "roles")
 public class Role implements GrantedAuthority {
     @Id
     private final Integer id;
@@ -2,6 +2,8 @@ package ru.gazer.gazer.models;
 
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import lombok.*;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.validation.annotation.Validated;
@@ -15,6 +17,9 @@ import java.util.Set;
 
 /**
  * Класс - сущность, на основе которого создается таблица users в базе данных.
+ * Записи не хранятся в кеше второго уровня: он у каждого узла свой, и смена пароля или удаление аккаунта
+ * на одном узле не были бы видны другим. Вместо этого каждое чтение из UserDetailsCache сверяется
+ * с полем credentialsVersion в базе данных.
  */
 @Getter
 @Setter
@@ -47,10 +52,18 @@ public class User implements UserDetails {
     @NonNull
     @Size(min = 8, message = "Слишком короткий пароль")
     private String password;
+    /** Роль загружается отдельно от пользователя, а не соединением с user_roles, поэтому берется из кеша */
     @ManyToOne(fetch = FetchType.EAGER)
+    @Fetch(FetchMode.SELECT)
     @JsonManagedReference
     @NonNull
     private Role role;
+    /**
+     * Версия учетных данных. Увеличивается запросом UserReposiroty.incrementCredentialsVersion при смене email
+     * или пароля и не записывается при сохранении сущности, чтобы устаревший объект из сессии ее не откатил
+     */
+    @Column(name = "credentials_version", updatable = false, columnDefinition = "bigint default 0 not null")
+    private long credentialsVersion;
 
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
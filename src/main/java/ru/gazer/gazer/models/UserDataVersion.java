@@ -0,0 +1,26 @@
+package ru.gazer.gazer.models;
+import lombok.*;
+
+import javax.persistence.*;
+
+
+/**
+ * Класс - сущность, на основе которого создается таблица user_data_versions в базе данных.
+ * Запись хранит номер версии клиентов пользователя. Номер увеличивается в транзакции, изменяющей клиентов,
+ * поэтому все узлы видят новую версию одновременно с новыми данными.
+ */
+@Getter
+@Setter
+@NoArgsConstructor(force = true)
+@RequiredArgsConstructor
+@Entity
+@Table(name = "user_data_versions")
+public class UserDataVersion {
+
+    @Id
+    @NonNull
+    private Integer userId;
+    /** Номер версии клиентов пользователя */
+    private long version;
+
+}
@@ -0,0 +1,43 @@
+package ru.gazer.gazer.repos;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+import ru.gazer.gazer.models.AccountDeletion;
+
+import java.time.Instant;
+
+/**
+ * Интерфейс для взаимодействия с таблицей account_deletions базы данных
+ */
+public interface AccountDeletionRepository extends JpaRepository<AccountDeletion, Integer> {
+
+    /**
+     * Метод закрепляет задание за узлом owner до leaseUntil, если задание свободно, срок его закрепления
+     * истек к моменту now или оно уже закреплено за owner. Возвращает 0, если задание выполняет другой узел
+     */
+    @Transactional
+    @Modifying
+    @Query("update AccountDeletion a set a.owner = ?2, a.leaseUntil = ?3 where a.userId = ?1"
+            + " and (a.leaseUntil is null or a.leaseUntil < ?4 or a.owner = ?2)")
+    int claim(Integer userId, String owner, Instant leaseUntil, Instant now);
+
+    /**
+     * Метод увеличивает количество удаленных клиентов в задании, закрепленном за узлом owner, на count
+     * и продлевает закрепление до leaseUntil. Возвращает 0, если задание забрал другой узел
+     */
+    @Transactional
+    @Modifying
+    @Query("update AccountDeletion a set a.deletedClients = a.deletedClients + ?2, a.leaseUntil = ?4"
+            + " where a.userId = ?1 and a.owner = ?3")
+    int addDeletedClients(Integer userId, long count, String owner, Instant leaseUntil);
+
+    /**
+     * Метод удаляет завершенное задание, если оно закреплено за узлом owner
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from AccountDeletion a where a.userId = ?1 and a.owner = ?2")
+    int deleteClaimed(Integer userId, String owner);
+}
@@ -0,0 +1,28 @@
+package ru.gazer.gazer.repos;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import ru.gazer.gazer.models.ClientChange;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Интерфейс для взаимодействия с таблицей client_changes базы данных
+ */
+public interface ClientChangeRepository extends JpaRepository<ClientChange, Long> {
+
+    /**
+     * Метод получает отметки об изменениях клиентов, сделанных после заданного момента
+     */
+    List<ClientChange> findAllByChangedAtAfter(Instant changedAt);
+
+    /**
+     * Метод удаляет отметки об изменениях, сделанных раньше заданного момента.
+     * Возвращает количество удаленных записей
+     */
+    @Modifying
+    @Query("delete from ClientChange c where c.changedAt < ?1")
+    int deleteChangedBefore(Instant changedAt);
+}
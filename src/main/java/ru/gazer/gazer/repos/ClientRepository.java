@@ -2,33 +2,152 @@ package ru.gazer.gazer.repos;
 
 import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import ru.gazer.gazer.models.Client;
+import ru.gazer.gazer.models.ClientDocument;
+import ru.gazer.gazer.models.ClientSnapshot;
 
 import org.springframework.data.domain.Pageable;
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
- * Интерфейс для взаимодействия с таблицей clients базы данных
+ * Интерфейс для взаимодействия с таблицей clients базы данных.
+ * Методы выборки возвращают проекцию ClientSnapshot, а не управляемые сущности Client: Spring Data выбирает
+ * только столбцы конструктора ClientSnapshot и создает объекты без прокси и снимков для dirty checking
  */
 public interface ClientRepository extends JpaRepository<Client, Integer> {
 
     /**
      * Метод получает записи с искомыми значениями полей passport_series, passport_number и user_id
      */
-    Slice<Client> findClientByPassportSeriesAndPassportNumberAndUserIdIn(String passportSeries, String passportNumber, List<Integer> ids, Pageable pageable);
+    Slice<ClientSnapshot> findClientByPassportSeriesAndPassportNumberAndUserId(String passportSeries, String passportNumber, Integer userId, Pageable pageable);
+
+    /**
+     * Метод проверяет, существует ли запись с искомыми значениями полей passport_series, passport_number
+     * и одним значением user_id
+     */
+    boolean existsByPassportSeriesAndPassportNumberAndUserId(String passportSeries, String passportNumber, Integer userId);
+
+    /**
+     * Метод проверяет, существует ли запись с искомыми значениями полей passport_series, passport_number
+     * и одним из значений user_id
+     */
+    boolean existsByPassportSeriesAndPassportNumberAndUserIdIn(String passportSeries, String passportNumber, List<Integer> userIds);
 
     /**
      * Метод получает записи с искомыми значениями полей first_name, last_name и user_id
      */
-    Slice<Client> findClientsByFirstNameAndLastNameAndUserIdIn(String firstName, String lastName, List<Integer> ids, Pageable pageable);
+    Slice<ClientSnapshot> findClientsByFirstNameAndLastNameAndUserId(String firstName, String lastName, Integer userId, Pageable pageable);
 
     /**
      * Метод получает записи с искомым значением поля user_id
      */
-    Slice<Client> findAllByUserIdIn(List<Integer> userIds, Pageable pageable);
+    Slice<ClientSnapshot> findAllByUserId(Integer userId, Pageable pageable);
+
+    /**
+     * Метод получает все записи с искомым значением поля user_id, упорядоченные по client_id
+     */
+    List<ClientSnapshot> findAllByUserIdOrderByClientId(Integer userId);
+
+    /**
+     * Метод получает записи с искомым значением поля user_id, у которых client_id больше курсора.
+     * Используется для постраничного вывода методом поиска по ключу (keyset) вместо OFFSET
+     */
+    Slice<ClientSnapshot> findAllByUserIdAndClientIdGreaterThan(Integer userId, Integer clientId, Pageable pageable);
+
+    /**
+     * Метод получает записи с искомым значением поля user_id, у которых client_id меньше курсора.
+     * Используется для перехода на предыдущую страницу при поиске по ключу
+     */
+    Slice<ClientSnapshot> findAllByUserIdAndClientIdLessThan(Integer userId, Integer clientId, Pageable pageable);
+
+    /**
+     * Метод получает записи пользователя с одним из искомых значений поля passport_number
+     */
+    List<ClientSnapshot> findAllByUserIdAndPassportNumberIn(Integer userId, Collection<String> passportNumbers);
+
+    /**
+     * Метод получает запись с искомым значением client_id, если она принадлежит пользователю user_id
+     */
+    Optional<ClientSnapshot> findByClientIdAndUserId(Integer clientId, Integer userId);
+
+    /**
+     * Метод получает записи с искомыми значениями client_id, принадлежащие пользователю user_id
+     */
+    List<ClientSnapshot> findAllByClientIdInAndUserId(Collection<Integer> clientIds, Integer userId);
+
+    /**
+     * Метод получает записи с искомыми значениями client_id независимо от владельца
+     */
+    List<ClientSnapshot> findAllByClientIdIn(Collection<Integer> clientIds);
+
+    /**
+     * Метод возвращает поток записей с искомым значением поля user_id, упорядоченных по client_id.
+     * Записи читаются из курсора порциями по 500 строк и загружаются только для чтения.
+     * Поток должен потребляться и закрываться внутри транзакции
+     */
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+    })
+    Stream<Client> streamAllByUserIdInOrderByClientId(List<Integer> userIds);
+
+    /**
+     * Метод получает все записи таблицы. Используется для построения индексов поиска при запуске приложения
+     */
+    List<ClientSnapshot> findAllProjectedBy();
+
+    /**
+     * Метод получает ссылки на документы клиентов с искомыми значениями client_id, принадлежащих пользователю
+     * user_id, и блокирует эти записи до конца транзакции. Параллельное удаление тех же клиентов ожидает
+     * фиксации транзакции и уже не находит удаленные записи
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<ClientDocument> findDocumentsByClientIdInAndUserId(Collection<Integer> clientIds, Integer userId);
+
+    /**
+     * Метод получает ссылку на документ клиента, если клиент принадлежит одному из пользователей user_id
+     */
+    Optional<ClientDocument> findDocumentByClientIdAndUserIdIn(Integer clientId, List<Integer> userIds);
+
+    /**
+     * Метод получает клиентов, ссылающихся на документ
+     */
+    List<ClientDocument> findAllByDocumentId(String documentId);
+
+    /**
+     * Метод получает ссылки на документы всех клиентов пользователя
+     */
+    List<ClientDocument> findDocumentsByUserId(Integer userId);
+
+    /**
+     * Метод получает ссылки на документы страницы клиентов пользователя и блокирует эти записи
+     * до конца транзакции. Параллельное удаление тех же клиентов на другом узле ожидает фиксации транзакции
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<ClientDocument> findDocumentsByUserId(Integer userId, Pageable pageable);
+
+    /**
+     * Метод удаляет записи с искомыми значениями client_id одним запросом, не загружая сущности.
+     * Возвращает количество удаленных записей
+     */
+    @Modifying
+    @Query("delete from Client c where c.clientId in ?1")
+    int deleteByClientIdIn(Collection<Integer> clientIds);
 
     /**
-     * Метод удаляет все записи с userId
+     * Метод удаляет записи с искомыми значениями client_id, принадлежащие пользователю user_id, одним запросом.
+     * Записи других пользователей и общие клиенты не удаляются. Возвращает количество удаленных записей
      */
-    void deleteAllByUserId(Integer userId);
-}
\ No newline at end of file
+    @Modifying
+    @Query("delete from Client c where c.clientId in ?1 and c.userId = ?2")
+    int deleteByClientIdInAndUserId(Collection<Integer> clientIds, Integer userId);
+}
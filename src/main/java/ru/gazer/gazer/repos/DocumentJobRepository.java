@@ -0,0 +1,74 @@
+package ru.gazer.gazer.repos;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import ru.gazer.gazer.models.DocumentJob;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Интерфейс для взаимодействия с таблицей document_jobs базы данных
+ */
+public interface DocumentJobRepository extends JpaRepository<DocumentJob, Long> {
+
+    /**
+     * Метод получает в порядке создания задания в состоянии pending и задания в состоянии running,
+     * срок закрепления которых истек к моменту now
+     */
+    @Query("select j from DocumentJob j where j.state = ?1 or (j.state = ?2 and j.leaseUntil < ?3) order by j.jobId")
+    List<DocumentJob> findClaimable(DocumentJob.State pending, DocumentJob.State running, Instant now, Pageable pageable);
+
+    /**
+     * Метод переводит задание в состояние running и закрепляет его за узлом owner до leaseUntil, если задание
+     * все еще находится в состоянии pending или срок его закрепления истек к моменту now.
+     * Возвращает 0, если задание уже забрал другой узел
+     */
+    @Modifying
+    @Query("update DocumentJob j set j.state = ?2, j.owner = ?3, j.leaseUntil = ?4 where j.jobId = ?1"
+            + " and (j.state = ?5 or (j.state = ?2 and j.leaseUntil < ?6))")
+    int claim(Long jobId, DocumentJob.State running, String owner, Instant leaseUntil, DocumentJob.State pending, Instant now);
+
+    /**
+     * Метод переводит задание, закрепленное за узлом owner, в состояние done. Возвращает 0, если задание
+     * удалено вместе с документом или забрано другим узлом
+     */
+    @Modifying
+    @Query("update DocumentJob j set j.state = ?3, j.owner = null, j.leaseUntil = null, j.completedAt = ?4"
+            + " where j.jobId = ?1 and j.owner = ?2")
+    int complete(Long jobId, String owner, DocumentJob.State done, Instant completedAt);
+
+    /**
+     * Метод записывает неудачную попытку обработки задания, закрепленного за узлом owner, и переводит его
+     * в состояние state. Возвращает 0, если задание удалено вместе с документом или забрано другим узлом
+     */
+    @Modifying
+    @Query("update DocumentJob j set j.state = ?3, j.attempts = ?4, j.owner = null, j.leaseUntil = null"
+            + " where j.jobId = ?1 and j.owner = ?2")
+    int fail(Long jobId, String owner, DocumentJob.State state, int attempts);
+
+    /**
+     * Метод получает задания в искомом состоянии, завершенные после заданного момента
+     */
+    List<DocumentJob> findAllByStateAndCompletedAtAfter(DocumentJob.State state, Instant completedAt);
+
+    /**
+     * Метод удаляет задания в искомом состоянии, завершенные раньше заданного момента.
+     * Возвращает количество удаленных записей
+     */
+    @Modifying
+    @Query("delete from DocumentJob j where j.state = ?1 and j.completedAt < ?2")
+    int deleteCompletedBefore(DocumentJob.State state, Instant completedAt);
+
+    /**
+     * Метод подсчитывает задания в искомом состоянии
+     */
+    long countByState(DocumentJob.State state);
+
+    /**
+     * Метод удаляет все задания документа
+     */
+    void deleteAllByDocumentId(String documentId);
+}
@@ -0,0 +1,61 @@
+package ru.gazer.gazer.repos;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import ru.gazer.gazer.models.Document;
+
+import javax.persistence.LockModeType;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Интерфейс для взаимодействия с таблицей documents базы данных
+ */
+public interface DocumentRepository extends JpaRepository<Document, String> {
+
+    /**
+     * Метод получает запись о документе и блокирует ее до конца транзакции (SELECT ... FOR UPDATE).
+     * Изменения одного документа выполняются по очереди, в том числе на разных узлах
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select d from Document d where d.documentId = ?1")
+    Optional<Document> findForUpdate(String documentId);
+
+    /**
+     * Метод увеличивает счетчик ссылок на документ. Возвращает количество измененных записей
+     */
+    @Modifying
+    @Query("update Document d set d.refCount = d.refCount + 1 where d.documentId = ?1")
+    int incrementRefCount(String documentId);
+
+    /**
+     * Метод уменьшает счетчик ссылок на документ. Возвращает количество измененных записей
+     */
+    @Modifying
+    @Query("update Document d set d.refCount = d.refCount - 1 where d.documentId = ?1")
+    int decrementRefCount(String documentId);
+
+    /**
+     * Метод уменьшает счетчик ссылок на документ на count. Возвращает количество измененных записей
+     */
+    @Modifying
+    @Query("update Document d set d.refCount = d.refCount - ?2 where d.documentId = ?1")
+    int decrementRefCount(String documentId, int count);
+
+    /**
+     * Метод получает идентификаторы документов, на которые не осталось ссылок
+     */
+    @Query("select d.documentId from Document d where d.refCount <= 0")
+    List<String> findUnreferenced(Pageable pageable);
+
+    /**
+     * Метод удаляет запись о документе, если на него больше никто не ссылается.
+     * Возвращает количество удаленных записей
+     */
+    @Modifying
+    @Query("delete from Document d where d.documentId = ?1 and d.refCount <= 0")
+    int deleteUnreferenced(String documentId);
+}
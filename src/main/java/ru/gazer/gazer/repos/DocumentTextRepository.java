@@ -0,0 +1,44 @@
+package ru.gazer.gazer.repos;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import ru.gazer.gazer.models.ClientDocumentText;
+import ru.gazer.gazer.models.DocumentText;
+
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Интерфейс для взаимодействия с таблицей document_texts базы данных
+ */
+public interface DocumentTextRepository extends JpaRepository<DocumentText, String> {
+
+    /**
+     * Метод возвращает поток текстов документов всех клиентов. Используется для построения индекса поиска
+     * при запуске приложения. Поток должен потребляться и закрываться внутри транзакции
+     */
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "100"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+    })
+    @Query("select c.clientId as clientId, t.text as text from Client c, DocumentText t where c.documentId = t.documentId")
+    Stream<ClientDocumentText> streamAllClientTexts();
+
+    /**
+     * Метод возвращает тексты документов клиентов с искомыми значениями client_id
+     */
+    @Query("select c.clientId as clientId, t.text as text from Client c, DocumentText t"
+            + " where c.documentId = t.documentId and c.clientId in ?1")
+    List<ClientDocumentText> findClientTexts(Collection<Integer> clientIds);
+
+    /**
+     * Метод удаляет текст документа
+     */
+    @Modifying
+    @Query("delete from DocumentText t where t.documentId = ?1")
+    int deleteByDocumentId(String documentId);
+}
@@ -0,0 +1,42 @@
+package ru.gazer.gazer.repos;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+import ru.gazer.gazer.models.UserDataVersion;
+
+import java.util.Optional;
+
+/**
+ * Интерфейс для взаимодействия с таблицей user_data_versions базы данных
+ */
+public interface UserDataVersionRepository extends JpaRepository<UserDataVersion, Integer> {
+
+    /**
+     * Метод возвращает номер версии клиентов пользователя. Читается запросом, а не через контекст
+     * персистентности, чтобы не вернуть версию, прочитанную раньше в той же транзакции
+     */
+    @Query("select v.version from UserDataVersion v where v.userId = ?1")
+    Optional<Long> findVersion(Integer userId);
+
+    /**
+     * Метод увеличивает номер версии клиентов пользователя в текущей транзакции.
+     * Возвращает 0, если записи о пользователе еще нет
+     */
+    @Transactional
+    @Modifying
+    @Query("update UserDataVersion v set v.version = v.version + 1 where v.userId = ?1")
+    int increment(Integer userId);
+
+    /**
+     * Метод создает записи о версии для зарегистрированных пользователей и общих клиентов (userId = 0),
+     * у которых их еще нет. Возвращает количество созданных записей
+     */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = "insert into user_data_versions (user_id, version)"
+            + " select ids.id, 0 from (select u.id as id from users u union select 0) ids"
+            + " where not exists (select 1 from user_data_versions v where v.user_id = ids.id)")
+    int createMissing();
+}
@@ -1,5 +1,8 @@
 package ru.gazer.gazer.repos;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.gazer.gazer.models.User;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -14,4 +17,27 @@ public interface UserReposiroty extends JpaRepository<User, Integer> {
      * Метод получает записи с искомым значением поля email
      */
     User findUserByEmail(String email);
+
+    /**
+     * Метод возвращает версию учетных данных пользователя с email или null, если пользователь удален.
+     * Используется для проверки записей UserDetailsCache
+     */
+    @Query("select u.credentialsVersion from User u where u.email = ?1")
+    Long findCredentialsVersionByEmail(String email);
+
+    /**
+     * Метод увеличивает версию учетных данных пользователя с идентификатором id
+     */
+    @Transactional
+    @Modifying
+    @Query("update User u set u.credentialsVersion = u.credentialsVersion + 1 where u.id = ?1")
+    int incrementCredentialsVersion(Integer id);
+
+    /**
+     * Метод заменяет хеш пароля пользователя с идентификатором id, не изменяя остальные поля записи
+     */
+    @Transactional
+    @Modifying
+    @Query("update User u set u.password = ?2 where u.id = ?1")
+    int updatePassword(Integer id, String password);
 }
@@ -0,0 +1,166 @@
+package ru.gazer.gazer.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.gazer.gazer.models.AccountDeletion;
+import ru.gazer.gazer.models.User;
+import ru.gazer.gazer.repos.AccountDeletionRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Удаление аккаунта пользователя. Запись пользователя удаляется сразу вместе с созданием задания
+ * в таблице account_deletions, поэтому пользователь больше не может войти, а его сессии перестают быть
+ * аутентифицированными на всех узлах: UserDetailsCache сверяет каждую запись с таблицей users.
+ * Клиенты и документы удаляются в фоновом потоке пачками по chunkSize записей, каждая пачка в короткой
+ * транзакции. Задания, прерванные перезапуском, выбираются из таблицы периодически и продолжаются с того места,
+ * где остановились. Задание выполняет один узел: он закрепляет его за собой (см. AccountDeletionRepository.claim),
+ * а остальные узлы только убирают клиентов пользователя из своих индексов поиска.
+ */
+@Service
+public class AccountDeletionService {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountDeletionService.class);
+
+    /** Интерфейс для взаимодействия с таблицей account_deletions */
+    @Autowired
+    private AccountDeletionRepository accountDeletionRepository;
+
+    /** Экземпляр класса UserService */
+    @Autowired
+    private UserService userService;
+
+    /** Экземпляр класса ClientService */
+    @Autowired
+    private ClientService clientService;
+
+    /** Экземпляр класса DocumentService */
+    @Autowired
+    private DocumentService documentService;
+
+    /** Шаблон для выполнения кода в транзакции */
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /** Количество клиентов, удаляемых в одной транзакции */
+    @Value("${accounts.deletion.chunk-size}")
+    private int chunkSize;
+
+    /** На сколько миллисекунд задание закрепляется за узлом. Срок продлевается после каждой пачки */
+    @Value("${accounts.deletion.lease-ms}")
+    private long leaseMillis;
+
+    /** Идентификатор узла, за которым закрепляются задания */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /** Пользователи, клиенты которых уже убраны из индексов поиска этого узла */
+    private final Set<Integer> forgotten = ConcurrentHashMap.newKeySet();
+
+    /** Фоновый поток удаления */
+    private ThreadPoolExecutor executor;
+
+    /** Пользователи, задания которых переданы фоновому потоку */
+    private final Set<Integer> inFlight = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(100), runnable -> {
+                    Thread thread = new Thread(runnable, "account-deletion");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Метод удаляет пользователя и ставит удаление его клиентов и документов в очередь
+     */
+    public void deleteAccount(User user) {
+        transactionTemplate.execute(status -> {
+            accountDeletionRepository.save(new AccountDeletion(user.getId()));
+            userService.deleteUser(user);
+            return null;
+        });
+        forgotten.add(user.getId());
+        clientService.forgetUserClients(user.getId());
+        submit(user.getId());
+    }
+
+    /**
+     * Метод выбирает из таблицы account_deletions незавершенные задания, убирает клиентов их пользователей
+     * из индексов поиска этого узла и передает фоновому потоку задания, не закрепленные за другими узлами
+     */
+    @Scheduled(fixedDelayString = "${accounts.deletion.poll-interval-ms}")
+    public void poll() {
+        Instant now = Instant.now();
+        Set<Integer> pending = new HashSet<>();
+        for (AccountDeletion deletion : accountDeletionRepository.findAll()) {
+            Integer userId = deletion.getUserId();
+            pending.add(userId);
+            if (forgotten.add(userId))
+                clientService.forgetUserClients(userId);
+            if (deletion.getLeaseUntil() == null || deletion.getLeaseUntil().isBefore(now))
+                submit(userId);
+        }
+        forgotten.retainAll(pending);
+    }
+
+    private void submit(Integer userId) {
+        if (!inFlight.add(userId))
+            return;
+        try {
+            executor.execute(() -> process(userId));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(userId);
+        }
+    }
+
+    /**
+     * Метод закрепляет задание за узлом, удаляет клиентов пользователя пачками, а затем завершает задание.
+     * Перед началом удаляются документы без ссылок, оставшиеся после прерванного выполнения.
+     * Если задание выполняет другой узел, то метод ничего не делает
+     */
+    void process(Integer userId) {
+        try {
+            if (accountDeletionRepository.claim(userId, nodeId, leaseUntil(), Instant.now()) == 0)
+                return;
+            clientService.forgetUserClients(userId);
+            documentService.purgeUnreferenced();
+            int deleted;
+            while ((deleted = clientService.deleteUserClientsChunk(userId, chunkSize)) > 0) {
+                if (accountDeletionRepository.addDeletedClients(userId, deleted, nodeId, leaseUntil()) == 0)
+                    return;
+            }
+            accountDeletionRepository.deleteClaimed(userId, nodeId);
+        } catch (Exception e) {
+            log.error("Не удалось удалить клиентов пользователя {}, задание будет повторено", userId, e);
+        } finally {
+            inFlight.remove(userId);
+        }
+    }
+
+    private Instant leaseUntil() {
+        return Instant.now().plusMillis(leaseMillis);
+    }
+}
@@ -0,0 +1,162 @@
+package ru.gazer.gazer.service;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Кодировщик паролей BCrypt, выполняющий хеширование в отдельном ограниченном пуле потоков.
+ * Потоки запросов только ожидают результат, поэтому всплеск попыток входа занимает не больше
+ * threads ядер процессора. Емкость очереди выводится из количества потоков, времени ожидания и целевого
+ * времени хеширования (см. queueCapacity): задача в конце очереди еще успевает выполниться до истечения
+ * ожидания. Если очередь заполнена, то хеширование отклоняется исключением AuthenticationServiceException,
+ * и попытка входа или регистрации завершается ошибкой сразу, а не после ожидания.
+ * Сложность BCrypt подбирается при запуске методом calibrate. Хеши с меньшей сложностью
+ * пересчитываются при успешном входе (см. upgradeEncoding).
+ */
+public class AdaptivePasswordEncoder implements PasswordEncoder {
+
+    /** Шаблон хеша BCrypt, вторая группа - сложность */
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2(a|y|b)?\\$(\\d\\d)\\$[./0-9A-Za-z]{53}");
+
+    /** Пул потоков хеширования */
+    private final ThreadPoolExecutor executor;
+
+    /** Сколько миллисекунд поток запроса ожидает результат хеширования */
+    private final long timeoutMillis;
+
+    /** Текущая сложность BCrypt */
+    private volatile int strength;
+
+    /** Кодировщик с текущей сложностью */
+    private volatile BCryptPasswordEncoder delegate;
+
+    public AdaptivePasswordEncoder(int threads, long timeoutMillis, Duration target, int strength) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity(threads, timeoutMillis, target)), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.timeoutMillis = timeoutMillis;
+        setStrength(strength);
+    }
+
+    /**
+     * Метод возвращает емкость очереди, при которой задача в ее конце выполняется не позже timeoutMillis,
+     * если одно хеширование занимает не больше target: перед ней выполняются threads задач одновременно,
+     * поэтому она ждет queueCapacity / threads хеширований и затем выполняется сама. Не меньше 1
+     */
+    public static int queueCapacity(int threads, long timeoutMillis, Duration target) {
+        long hashesPerThread = timeoutMillis / Math.max(1, target.toMillis());
+        return (int) Math.max(1, threads * (hashesPerThread - 1));
+    }
+
+    /**
+     * Метод подбирает наибольшую сложность от minStrength до maxStrength, при которой хеширование
+     * одного пароля на текущем оборудовании занимает не больше target. Каждая единица сложности
+     * удваивает время, поэтому калибровка длится не дольше двух target. Возвращает выбранную сложность
+     */
+    public int calibrate(Duration target, int minStrength, int maxStrength) {
+        int candidate = minStrength;
+        new BCryptPasswordEncoder(candidate).encode("calibration");
+        long nanos = measure(candidate);
+        while (candidate < maxStrength && nanos * 2 <= target.toNanos()) {
+            candidate++;
+            nanos = measure(candidate);
+        }
+        if (nanos > target.toNanos() && candidate > minStrength)
+            candidate--;
+        setStrength(candidate);
+        return candidate;
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    /**
+     * Метод возвращает пул потоков хеширования, например, для публикации его метрик
+     */
+    public ThreadPoolExecutor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        BCryptPasswordEncoder encoder = delegate;
+        return submit(() -> encoder.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        BCryptPasswordEncoder encoder = delegate;
+        return submit(() -> encoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Метод сообщает, что хеш нужно пересчитать, если его сложность меньше текущей. Хеши с большей сложностью
+     * не пересчитываются: если калибровка на более медленном узле уменьшила сложность, то узлы с разной
+     * сложностью иначе пересчитывали бы хеши друг друга при каждом входе, а хеши становились бы слабее
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null)
+            return false;
+        Matcher matcher = BCRYPT_PATTERN.matcher(encodedPassword);
+        return matcher.matches() && Integer.parseInt(matcher.group(2)) < strength;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void setStrength(int strength) {
+        this.delegate = new BCryptPasswordEncoder(strength);
+        this.strength = strength;
+    }
+
+    private static long measure(int strength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        long start = System.nanoTime();
+        encoder.encode("calibration");
+        return System.nanoTime() - start;
+    }
+
+    private <T> T submit(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new AuthenticationServiceException("Очередь проверки паролей переполнена", e);
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Проверка пароля прервана", e);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new AuthenticationServiceException("Превышено время проверки пароля", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new AuthenticationServiceException("Ошибка проверки пароля", e.getCause());
+        }
+    }
+}
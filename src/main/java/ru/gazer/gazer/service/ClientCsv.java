@@ -0,0 +1,96 @@
+package ru.gazer.gazer.service;
+
+import ru.gazer.gazer.models.Client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Класс описывает формат CSV файлов с клиентами, который используется при импорте и экспорте.
+ * Столбцы разделяются запятой, значения с запятой или кавычками заключаются в двойные кавычки.
+ */
+public final class ClientCsv {
+
+    /** Заголовок файла */
+    public static final String HEADER = "first_name,last_name,sex,age,passport_series,passport_number,phone";
+
+    /** Количество столбцов в строке */
+    private static final int COLUMNS = 7;
+
+    private ClientCsv() {
+    }
+
+    /**
+     * Метод проверяет, является ли строка заголовком файла
+     */
+    public static boolean isHeader(String line) {
+        return line.replace("\uFEFF", "").trim().equalsIgnoreCase(HEADER);
+    }
+
+    /**
+     * Метод создает объект Client из строки файла. Если количество столбцов неверное,
+     * выбрасывается IllegalArgumentException
+     */
+    public static Client parse(String line) {
+        List<String> values = split(line);
+        if (values.size() != COLUMNS)
+            throw new IllegalArgumentException("Ожидается " + COLUMNS + " столбцов, найдено " + values.size());
+        Client client = new Client();
+        client.setFirstName(values.get(0));
+        client.setLastName(values.get(1));
+        client.setSex(values.get(2));
+        client.setAge(values.get(3));
+        client.setPassportSeries(values.get(4));
+        client.setPassportNumber(values.get(5));
+        client.setPhone(values.get(6));
+        return client;
+    }
+
+    /**
+     * Метод формирует строку файла для клиента. Строка не содержит перевода строки
+     */
+    public static String format(Client client) {
+        return quote(client.getFirstName()) + ',' + quote(client.getLastName()) + ',' + quote(client.getSex()) + ','
+                + quote(client.getAge()) + ',' + quote(client.getPassportSeries()) + ','
+                + quote(client.getPassportNumber()) + ',' + quote(client.getPhone());
+    }
+
+    /**
+     * Метод разбивает строку на значения с учетом двойных кавычек
+     */
+    static List<String> split(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString().trim());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString().trim());
+        return values;
+    }
+
+    private static String quote(String value) {
+        if (value == null)
+            return "";
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0)
+            return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,95 @@
+package ru.gazer.gazer.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.gazer.gazer.models.Client;
+import ru.gazer.gazer.models.ClientSnapshot;
+import ru.gazer.gazer.repos.ClientRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Класс реализует потоковый экспорт клиентов пользователя в CSV и NDJSON (один JSON объект на строку).
+ * Записи читаются из курсора базы данных и сразу пишутся в выходной поток, а прочитанные сущности
+ * отсоединяются от контекста персистентности, поэтому расход памяти не зависит от количества клиентов.
+ */
+@Service
+public class ClientExportService {
+
+    /** Через сколько записей выходной поток принудительно сбрасывается клиенту */
+    private static final int FLUSH_EVERY = 1000;
+
+    /** Интерфейс, обеспечивающий взаимодействие с базой данных */
+    @Autowired
+    private ClientRepository clientRepository;
+
+    /** Объект, преобразующий записи в JSON */
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /** Контекст персистентности текущей транзакции */
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Метод записывает клиентов пользователя и общих клиентов в поток out в формате CSV с заголовком ClientCsv.HEADER
+     */
+    @Transactional(readOnly = true)
+    public void exportCsv(Integer userId, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(ClientCsv.HEADER);
+        writer.write('\n');
+        writer.flush();
+        try (Stream<Client> clients = clientRepository.streamAllByUserIdInOrderByClientId(Arrays.asList(0, userId))) {
+            Iterator<Client> iterator = clients.iterator();
+            for (int count = 1; iterator.hasNext(); count++) {
+                Client client = iterator.next();
+                writer.write(ClientCsv.format(client));
+                writer.write('\n');
+                entityManager.detach(client);
+                if (count % FLUSH_EVERY == 0)
+                    writer.flush();
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Метод записывает клиентов пользователя и общих клиентов в поток out в формате NDJSON
+     */
+    @Transactional(readOnly = true)
+    public void exportJson(Integer userId, OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        ObjectWriter writer = objectMapper.writerFor(ClientSnapshot.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("");
+        try (Stream<Client> clients = clientRepository.streamAllByUserIdInOrderByClientId(Arrays.asList(0, userId))) {
+            Iterator<Client> iterator = clients.iterator();
+            for (int count = 1; iterator.hasNext(); count++) {
+                Client client = iterator.next();
+                writer.writeValue(generator, ClientSnapshot.of(client));
+                generator.writeRaw('\n');
+                entityManager.detach(client);
+                if (count % FLUSH_EVERY == 0)
+                    generator.flush();
+            }
+        }
+        generator.close();
+    }
+}
@@ -0,0 +1,62 @@
+package ru.gazer.gazer.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Отчет об импорте клиентов из CSV файла. Хранит не более maxErrors описаний ошибок,
+ * остальные отклоненные строки только подсчитываются, поэтому размер отчета не зависит от размера файла.
+ */
+@Getter
+public class ClientImportReport {
+
+    /** Максимальное количество хранимых описаний ошибок */
+    private final int maxErrors;
+
+    /** Количество добавленных клиентов */
+    private long imported;
+
+    /** Количество отклоненных строк */
+    private long rejected;
+
+    /** Описания ошибок по строкам файла */
+    private final List<RowError> errors = new ArrayList<>();
+
+    public ClientImportReport(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Метод учитывает добавленных клиентов
+     */
+    public void imported(int count) {
+        imported += count;
+    }
+
+    /**
+     * Метод учитывает отклоненную строку файла
+     */
+    public void reject(long line, String message) {
+        rejected++;
+        if (errors.size() < maxErrors)
+            errors.add(new RowError(line, message));
+    }
+
+    /**
+     * Метод сообщает, что часть ошибок не попала в отчет
+     */
+    public boolean isTruncated() {
+        return rejected > errors.size();
+    }
+
+    /** Ошибка в строке файла */
+    @Getter
+    @RequiredArgsConstructor
+    public static class RowError {
+        private final long line;
+        private final String message;
+    }
+}
@@ -0,0 +1,104 @@
+package ru.gazer.gazer.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.gazer.gazer.models.Client;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Класс реализует массовый импорт клиентов из CSV файла. Файл читается построчно, каждая строка
+ * проверяется по правилам валидации класса Client, а корректные строки сохраняются пачками
+ * через ClientService.saveClients. В памяти одновременно находится не больше одной пачки.
+ */
+@Service
+public class ClientImportService {
+
+    /** Экземпляр класса ClientService */
+    @Autowired
+    private ClientService clientService;
+
+    /** Валидатор, проверяющий объекты Client */
+    @Autowired
+    private Validator validator;
+
+    /** Количество строк в одной пачке. Задается в application.properties */
+    @Value("${clients.import.batch-size}")
+    private int batchSize;
+
+    /** Максимальное количество описаний ошибок в отчете. Задается в application.properties */
+    @Value("${clients.import.max-reported-errors}")
+    private int maxReportedErrors;
+
+    /**
+     * Метод импортирует клиентов из CSV файла для пользователя userId и возвращает отчет с ошибками по строкам.
+     * Первая строка пропускается, если она совпадает с заголовком ClientCsv.HEADER
+     */
+    public ClientImportReport importCsv(InputStream in, Integer userId) throws IOException {
+        ClientImportReport report = new ClientImportReport(maxReportedErrors);
+        List<Client> batch = new ArrayList<>(batchSize);
+        List<Long> batchLines = new ArrayList<>(batchSize);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || (lineNumber == 1 && ClientCsv.isHeader(line)))
+                    continue;
+                Client client;
+                try {
+                    client = ClientCsv.parse(line);
+                } catch (IllegalArgumentException e) {
+                    report.reject(lineNumber, e.getMessage());
+                    continue;
+                }
+                Set<ConstraintViolation<Client>> violations = validator.validate(client);
+                if (!violations.isEmpty()) {
+                    report.reject(lineNumber, describe(violations));
+                    continue;
+                }
+                batch.add(client);
+                batchLines.add(lineNumber);
+                if (batch.size() >= batchSize)
+                    saveBatch(batch, batchLines, userId, report);
+            }
+        }
+        saveBatch(batch, batchLines, userId, report);
+        return report;
+    }
+
+    /**
+     * Метод сохраняет пачку клиентов, переносит отклоненные строки в отчет и очищает пачку
+     */
+    private void saveBatch(List<Client> batch, List<Long> batchLines, Integer userId, ClientImportReport report) {
+        if (batch.isEmpty())
+            return;
+        Map<Integer, String> rejected = clientService.saveClients(batch, userId);
+        for (Map.Entry<Integer, String> entry : rejected.entrySet())
+            report.reject(batchLines.get(entry.getKey()), entry.getValue());
+        report.imported(batch.size() - rejected.size());
+        batch.clear();
+        batchLines.clear();
+    }
+
+    private static String describe(Set<ConstraintViolation<Client>> violations) {
+        StringBuilder message = new StringBuilder();
+        for (ConstraintViolation<Client> violation : violations) {
+            if (message.length() > 0)
+                message.append("; ");
+            message.append(violation.getMessage());
+        }
+        return message.toString();
+    }
+}
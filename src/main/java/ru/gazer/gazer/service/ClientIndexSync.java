@@ -0,0 +1,141 @@
+package ru.gazer.gazer.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.gazer.gazer.models.ClientChange;
+import ru.gazer.gazer.models.ClientDocumentText;
+import ru.gazer.gazer.models.ClientSnapshot;
+import ru.gazer.gazer.repos.ClientChangeRepository;
+import ru.gazer.gazer.repos.ClientRepository;
+import ru.gazer.gazer.repos.DocumentTextRepository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Синхронизация индексов поиска узлов с таблицей clients. Индексы у каждого узла свои, поэтому узел,
+ * сохранивший или удаливший клиентов, записывает отметки об изменении в таблицу client_changes в той же
+ * транзакции, а каждый узел при опросе читает новые отметки и приводит записи клиентов в своих индексах
+ * к состоянию таблицы clients. Узел, сделавший изменение, обновляет свои индексы сразу, а при опросе
+ * только повторяет то же изменение.
+ */
+@Service
+public class ClientIndexSync {
+
+    /** Наибольшее количество clientId в одном запросе IN */
+    private static final int CHUNK_SIZE = 500;
+
+    /** Интерфейс для взаимодействия с таблицей client_changes */
+    @Autowired
+    private ClientChangeRepository clientChangeRepository;
+
+    /** Интерфейс для взаимодействия с таблицей clients */
+    @Autowired
+    private ClientRepository clientRepository;
+
+    /** Интерфейс для взаимодействия с таблицей document_texts */
+    @Autowired
+    private DocumentTextRepository documentTextRepository;
+
+    /** Индекс имен и фамилий клиентов */
+    @Autowired
+    private ClientNameIndex clientNameIndex;
+
+    /** Инвертированный индекс по всем полям клиентов */
+    @Autowired
+    private ClientSearchIndex clientSearchIndex;
+
+    /** Кеш результатов выборки клиентов. Версия увеличивается после обновления индексов этого узла */
+    @Autowired
+    private ClientResultCache clientResultCache;
+
+    /** Шаблон для выполнения кода в транзакции */
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * На сколько миллисекунд раньше предыдущего опроса выбираются отметки. Покрывает расхождение
+     * часов узлов и транзакции, зафиксированные после предыдущего опроса
+     */
+    @Value("${clients.index-sync.overlap-ms}")
+    private long overlapMillis;
+
+    /** Сколько миллисекунд отметка хранится в таблице. Должно быть больше overlap-ms */
+    @Value("${clients.index-sync.retention-ms}")
+    private long retentionMillis;
+
+    /** Момент предыдущего опроса */
+    private Instant syncedAt = Instant.now();
+
+    /** Уже примененные отметки и моменты изменений */
+    private final Map<Long, Instant> synced = new HashMap<>();
+
+    /**
+     * Метод записывает отметки об изменении клиентов пользователя userId. Вызывается в транзакции,
+     * которая сохраняет или удаляет клиентов
+     */
+    public void recordChanges(Integer userId, Collection<Integer> clientIds) {
+        Instant now = Instant.now();
+        List<ClientChange> changes = new ArrayList<>(clientIds.size());
+        for (Integer clientId : clientIds)
+            changes.add(new ClientChange(clientId, userId, now));
+        clientChangeRepository.saveAll(changes);
+    }
+
+    /**
+     * Метод применяет к индексам этого узла изменения, сделанные любым узлом после предыдущего опроса,
+     * и удаляет из таблицы давно прочитанные отметки
+     */
+    @Scheduled(fixedDelayString = "${clients.index-sync.poll-interval-ms}")
+    public void sync() {
+        Instant now = Instant.now();
+        Map<Integer, Integer> changed = new HashMap<>();
+        for (ClientChange change : clientChangeRepository.findAllByChangedAtAfter(syncedAt.minusMillis(overlapMillis)))
+            if (synced.putIfAbsent(change.getChangeId(), change.getChangedAt()) == null)
+                changed.put(change.getClientId(), change.getUserId());
+        List<Integer> clientIds = new ArrayList<>(changed.keySet());
+        for (int from = 0; from < clientIds.size(); from += CHUNK_SIZE)
+            apply(clientIds.subList(from, Math.min(clientIds.size(), from + CHUNK_SIZE)));
+        for (Integer userId : new HashSet<>(changed.values()))
+            clientResultCache.invalidate(userId);
+        syncedAt = now;
+        Instant horizon = now.minusMillis(overlapMillis);
+        synced.values().removeIf(changedAt -> changedAt.isBefore(horizon));
+        transactionTemplate.execute(status -> clientChangeRepository.deleteChangedBefore(now.minusMillis(retentionMillis)));
+    }
+
+    /**
+     * Метод приводит записи клиентов в индексах к состоянию таблицы clients: клиенты, которые есть в таблице,
+     * добавляются в индексы вместе с текстом документа, а остальные удаляются из индексов. Поэтому порядок
+     * отметок и их повторное применение не важны
+     */
+    private void apply(List<Integer> clientIds) {
+        Map<Integer, ClientSnapshot> current = new HashMap<>();
+        for (ClientSnapshot client : clientRepository.findAllByClientIdIn(clientIds))
+            current.put(client.getClientId(), client);
+        Map<Integer, String> texts = new HashMap<>();
+        if (!current.isEmpty())
+            for (ClientDocumentText text : documentTextRepository.findClientTexts(current.keySet()))
+                texts.put(text.getClientId(), text.getText());
+        for (Integer clientId : clientIds) {
+            ClientSnapshot client = current.get(clientId);
+            if (client == null) {
+                clientNameIndex.remove(clientId);
+                clientSearchIndex.remove(clientId);
+                continue;
+            }
+            clientNameIndex.add(clientId, client.getUserId(), client.getFirstName(), client.getLastName());
+            clientSearchIndex.add(client);
+            if (texts.containsKey(clientId))
+                clientSearchIndex.addDocumentText(clientId, texts.get(clientId));
+        }
+    }
+}
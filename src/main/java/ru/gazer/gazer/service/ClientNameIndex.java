@@ -0,0 +1,340 @@
+package ru.gazer.gazer.service;
+
+import org.springframework.stereotype.Component;
+import ru.gazer.gazer.models.ClientView;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Триграммный индекс имен и фамилий клиентов, разбитый по userId владельца.
+ * Для каждой триграммы хранится множество clientId, поэтому поиск перебирает только записи,
+ * имеющие общие триграммы с запросом, а не всю таблицу. Поддерживает поиск по префиксу,
+ * без учета регистра и с опечатками. Результаты ранжируются по степени совпадения.
+ */
+@Component
+public class ClientNameIndex {
+
+    /** Минимальная оценка совпадения одного поля, при которой клиент попадает в результаты */
+    private static final double MIN_FIELD_SCORE = 0.5;
+
+    /** Оценка совпадения поля, если значение начинается с запроса */
+    private static final double PREFIX_SCORE = 0.9;
+
+    /** Количество триграмм, которое может испортить одна опечатка */
+    private static final int TYPO_TRIGRAMS = 3;
+
+    /** Блокировка, разделяющая поиск и изменение индекса */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Разделы индекса по userId владельца */
+    private final Map<Integer, Partition> partitions = new HashMap<>();
+
+    /** Нормализованные имена клиентов по clientId */
+    private final Map<Integer, Entry> entries = new HashMap<>();
+
+    /** Изменения индекса после начала перестроения (см. beginRebuild). Равно null, если индекс не перестраивается */
+    private List<Runnable> changes;
+
+    /** Признак того, что индекс построен по таблице clients */
+    private volatile boolean ready;
+
+    /**
+     * Метод сообщает, построен ли индекс. До построения поиск нужно выполнять в базе данных
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Метод начинает перестроение индекса. Вызывается до выборки записей для rebuild: изменения,
+     * сделанные после этого вызова, запоминаются и повторяются поверх выборки, поэтому клиенты,
+     * добавленные или удаленные во время выборки, не теряются
+     */
+    public void beginRebuild() {
+        lock.writeLock().lock();
+        try {
+            changes = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Метод заменяет содержимое индекса переданными записями, повторяет изменения, сделанные
+     * после beginRebuild, и помечает индекс как построенный
+     */
+    public void rebuild(Collection<? extends ClientView> clients) {
+        lock.writeLock().lock();
+        try {
+            partitions.clear();
+            entries.clear();
+            for (ClientView client : clients)
+                put(client.getClientId(), client.getUserId(), client.getFirstName(), client.getLastName());
+            if (changes != null)
+                changes.forEach(Runnable::run);
+            changes = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Метод добавляет клиента в индекс или обновляет его имя и фамилию
+     */
+    public void add(Integer clientId, Integer userId, String firstName, String lastName) {
+        apply(() -> {
+            remove(entries.get(clientId), clientId);
+            put(clientId, userId, firstName, lastName);
+        });
+    }
+
+    /**
+     * Метод удаляет клиента из индекса
+     */
+    public void remove(Integer clientId) {
+        apply(() -> remove(entries.get(clientId), clientId));
+    }
+
+    /**
+     * Метод удаляет из индекса всех клиентов пользователя
+     */
+    public void removeUser(Integer userId) {
+        apply(() -> {
+            Partition partition = partitions.remove(userId);
+            if (partition != null)
+                entries.keySet().removeAll(partition.clientIds);
+        });
+    }
+
+    /**
+     * Метод выполняет изменение индекса и запоминает его, если индекс перестраивается
+     */
+    private void apply(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+            if (changes != null)
+                changes.add(change);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Метод ищет клиентов, принадлежащих пользователям userIds, по имени и фамилии.
+     * Возвращает не более limit значений clientId, упорядоченных по убыванию оценки совпадения
+     */
+    public List<Integer> search(String firstName, String lastName, List<Integer> userIds, int limit) {
+        String first = normalize(firstName);
+        String last = normalize(lastName);
+        Set<String> firstTrigrams = queryTrigrams(first);
+        Set<String> lastTrigrams = queryTrigrams(last);
+        List<Match> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Integer userId : new LinkedHashSet<>(userIds)) {
+                Partition partition = partitions.get(userId);
+                if (partition == null)
+                    continue;
+                Map<Integer, Integer> firstHits = countHits(partition.firstName, firstTrigrams);
+                Map<Integer, Integer> lastHits = countHits(partition.lastName, lastTrigrams);
+                Set<Integer> candidates = new HashSet<>(first.isEmpty() ? lastHits.keySet() : firstHits.keySet());
+                if (!first.isEmpty() && !last.isEmpty())
+                    candidates.retainAll(lastHits.keySet());
+                for (Integer clientId : candidates) {
+                    Entry entry = entries.get(clientId);
+                    double firstScore = score(first, firstTrigrams, entry.firstName, firstHits.get(clientId));
+                    double lastScore = score(last, lastTrigrams, entry.lastName, lastHits.get(clientId));
+                    if (firstScore >= MIN_FIELD_SCORE && lastScore >= MIN_FIELD_SCORE)
+                        matches.add(new Match(clientId, firstScore + lastScore));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Collections.sort(matches);
+        List<Integer> result = new ArrayList<>();
+        for (int i = 0; i < matches.size() && i < limit; i++)
+            result.add(matches.get(i).clientId);
+        return result;
+    }
+
+    /**
+     * Метод приводит строку к виду, в котором она хранится в индексе
+     */
+    static String normalize(String value) {
+        if (value == null)
+            return "";
+        return value.trim().toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    /**
+     * Метод разбивает значение поля на триграммы. Значение дополняется двумя пробелами в начале
+     * и одним в конце, чтобы начало и конец слова давали отдельные триграммы
+     */
+    static Set<String> trigrams(String value) {
+        return split("  " + value + " ");
+    }
+
+    /**
+     * Метод разбивает запрос на триграммы. Конец запроса не дополняется пробелом,
+     * чтобы запрос совпадал с префиксом значения
+     */
+    static Set<String> queryTrigrams(String value) {
+        if (value.isEmpty())
+            return Collections.emptySet();
+        return split("  " + value);
+    }
+
+    /**
+     * Метод вычисляет расстояние Левенштейна между двумя строками
+     */
+    static int editDistance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++)
+            previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static Set<String> split(String padded) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++)
+            result.add(padded.substring(i, i + 3));
+        return result;
+    }
+
+    /**
+     * Метод подсчитывает для каждого клиента количество триграмм запроса, встречающихся в поле
+     */
+    private static Map<Integer, Integer> countHits(Map<String, Set<Integer>> postings, Set<String> trigrams) {
+        Map<Integer, Integer> hits = new HashMap<>();
+        for (String trigram : trigrams) {
+            Set<Integer> clientIds = postings.get(trigram);
+            if (clientIds == null)
+                continue;
+            for (Integer clientId : clientIds)
+                hits.merge(clientId, 1, Integer::sum);
+        }
+        return hits;
+    }
+
+    /**
+     * Метод оценивает совпадение значения поля с запросом числом от 0 до 1.
+     * Полное совпадение дает 1, совпадение префикса - PREFIX_SCORE, иначе берется лучшая из
+     * оценок по доле общих триграмм и по расстоянию Левенштейна. Расстояние считается только
+     * для записей, у которых общих триграмм достаточно для одной опечатки
+     */
+    private static double score(String query, Set<String> queryTrigrams, String value, Integer hits) {
+        if (query.isEmpty())
+            return 1;
+        if (value.equals(query))
+            return 1;
+        if (value.startsWith(query))
+            return PREFIX_SCORE;
+        if (hits == null || query.length() < 3 || hits < queryTrigrams.size() - TYPO_TRIGRAMS)
+            return 0;
+        int valueTrigrams = value.length() + 1;
+        double similarity = (double) hits / (queryTrigrams.size() + valueTrigrams - hits);
+        int distance = editDistance(query, value);
+        double editSimilarity = 1 - (double) distance / Math.max(query.length(), value.length());
+        return Math.min(PREFIX_SCORE, Math.max(similarity, editSimilarity));
+    }
+
+    private void put(Integer clientId, Integer userId, String firstName, String lastName) {
+        Entry entry = new Entry(userId, normalize(firstName), normalize(lastName));
+        Partition partition = partitions.computeIfAbsent(userId, id -> new Partition());
+        partition.clientIds.add(clientId);
+        index(partition.firstName, trigrams(entry.firstName), clientId);
+        index(partition.lastName, trigrams(entry.lastName), clientId);
+        entries.put(clientId, entry);
+    }
+
+    private void remove(Entry entry, Integer clientId) {
+        if (entry == null)
+            return;
+        entries.remove(clientId);
+        Partition partition = partitions.get(entry.userId);
+        if (partition == null)
+            return;
+        partition.clientIds.remove(clientId);
+        unindex(partition.firstName, trigrams(entry.firstName), clientId);
+        unindex(partition.lastName, trigrams(entry.lastName), clientId);
+        if (partition.clientIds.isEmpty())
+            partitions.remove(entry.userId);
+    }
+
+    private static void index(Map<String, Set<Integer>> postings, Set<String> trigrams, Integer clientId) {
+        for (String trigram : trigrams)
+            postings.computeIfAbsent(trigram, t -> new HashSet<>()).add(clientId);
+    }
+
+    private static void unindex(Map<String, Set<Integer>> postings, Set<String> trigrams, Integer clientId) {
+        for (String trigram : trigrams) {
+            Set<Integer> clientIds = postings.get(trigram);
+            if (clientIds == null)
+                continue;
+            clientIds.remove(clientId);
+            if (clientIds.isEmpty())
+                postings.remove(trigram);
+        }
+    }
+
+    /** Раздел индекса, относящийся к одному пользователю */
+    private static class Partition {
+        private final Set<Integer> clientIds = new HashSet<>();
+        private final Map<String, Set<Integer>> firstName = new HashMap<>();
+        private final Map<String, Set<Integer>> lastName = new HashMap<>();
+    }
+
+    /** Нормализованные имя и фамилия клиента */
+    private static class Entry {
+        private final Integer userId;
+        private final String firstName;
+        private final String lastName;
+
+        private Entry(Integer userId, String firstName, String lastName) {
+            this.userId = userId;
+            this.firstName = firstName;
+            this.lastName = lastName;
+        }
+    }
+
+    /** Найденный клиент и его оценка. Упорядочивается по убыванию оценки, затем по clientId */
+    private static class Match implements Comparable<Match> {
+        private final Integer clientId;
+        private final double score;
+
+        private Match(Integer clientId, double score) {
+            this.clientId = clientId;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Match other) {
+            int byScore = Double.compare(other.score, score);
+            return byScore != 0 ? byScore : clientId.compareTo(other.clientId);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ru.gazer.gazer.service;
+
+import lombok.Getter;
+import org.springframework.data.domain.Slice;
+import ru.gazer.gazer.models.ClientSnapshot;
+import ru.gazer.gazer.models.ClientView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Страница клиентов в ответах JSON API. Содержит копии записей, не связанные с контекстом персистентности,
+ * и курсоры для перехода на соседние страницы без OFFSET
+ */
+@Getter
+public class ClientPage {
+
+    /** Номер страницы */
+    private final int page;
+
+    /** Клиенты на странице */
+    private final List<ClientSnapshot> content;
+
+    /** Есть ли следующая страница */
+    private final boolean hasNext;
+
+    /** clientId последней записи на странице, если есть следующая страница */
+    private final Integer after;
+
+    public ClientPage(Slice<ClientView> slice) {
+        this.page = slice.getNumber();
+        this.content = new ArrayList<>(slice.getNumberOfElements());
+        for (ClientView client : slice.getContent())
+            content.add(client instanceof ClientSnapshot ? (ClientSnapshot) client : ClientSnapshot.of(client));
+        this.hasNext = slice.hasNext();
+        this.after = hasNext && !content.isEmpty() ? content.get(content.size() - 1).getClientId() : null;
+    }
+}
@@ -0,0 +1,148 @@
+package ru.gazer.gazer.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.stereotype.Component;
+import ru.gazer.gazer.models.ClientSnapshot;
+import ru.gazer.gazer.models.ClientView;
+import ru.gazer.gazer.models.UserDataVersion;
+import ru.gazer.gazer.repos.UserDataVersionRepository;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Кеш результатов выборки клиентов по пользователям: страниц, поиска по имени и по паспорту.
+ * Ключ содержит номер версии клиентов пользователя и версию копии общих клиентов. Версия пользователя хранится
+ * в таблице user_data_versions и увеличивается в транзакции, изменяющей его клиентов, поэтому после изменения
+ * на любом узле старые результаты больше не находятся ни на одном узле, даже если были вычислены параллельно
+ * с изменением, и вытесняются по мере заполнения кеша. Чтение версии - один запрос по первичному ключу.
+ * Кеш ограничен суммарным весом (количеством клиентов во всех результатах) и количеством записей:
+ * вес записи не меньше maximumWeight / maximumSize, поэтому записей не может быть больше maximumSize.
+ * Попадания, промахи и вытеснения публикуются в метриках cache.* с тегом cache=clients.results.
+ */
+@Component
+public class ClientResultCache {
+
+    /** Результаты по ключу запроса */
+    private final Cache<Key, Slice<ClientView>> cache;
+
+    /** Версии клиентов пользователей */
+    private final UserDataVersionRepository userDataVersionRepository;
+
+    /** Копия общих клиентов */
+    private final SharedClients sharedClients;
+
+    public ClientResultCache(@Value("${clients.result-cache.maximum-size}") long maximumSize,
+                             @Value("${clients.result-cache.maximum-weight}") long maximumWeight,
+                             MeterRegistry meterRegistry, SharedClients sharedClients,
+                             UserDataVersionRepository userDataVersionRepository) {
+        this.sharedClients = sharedClients;
+        this.userDataVersionRepository = userDataVersionRepository;
+        int minWeight = (int) Math.max(1, maximumWeight / maximumSize);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((Key key, Slice<ClientView> value) -> Math.max(minWeight, value.getNumberOfElements()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "clients.results");
+        Gauge.builder("clients.results.hit.ratio", cache, c -> c.stats().hitRate())
+                .description("Доля запросов к кешу результатов, обслуженных без базы данных")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Метод создает записи о версии для пользователей, зарегистрированных до появления таблицы
+     * user_data_versions. Вызывается до приема запросов. Если записи одновременно создает другой узел,
+     * то вставка на этом узле отклоняется ограничением первичного ключа, и записи создает тот узел
+     */
+    @PostConstruct
+    public void createMissingVersions() {
+        try {
+            userDataVersionRepository.createMissing();
+        } catch (DataIntegrityViolationException e) {
+            // записи одновременно созданы другим узлом
+        }
+    }
+
+    /**
+     * Метод возвращает результат запроса query пользователя userId из кеша. При промахе результат вычисляется
+     * функцией loader, копируется и помещается в кеш. Запрос к базе данных выполняется вне блокировки
+     * внутри кеша, чтобы поток (в том числе виртуальный) не удерживал монитор во время ввода-вывода.
+     * Параллельные промахи по одному ключу вычисляют результат независимо, в кеше остается первый
+     */
+    public Slice<ClientView> get(Integer userId, Supplier<Slice<ClientView>> loader, Object... query) {
+        Key key = new Key(userId, version(userId), sharedClients.getVersion(), Arrays.asList(query));
+        Slice<ClientView> cached = cache.getIfPresent(key);
+        if (cached != null)
+            return cached;
+        Slice<ClientView> loaded = copy(loader.get());
+        Slice<ClientView> previous = cache.asMap().putIfAbsent(key, loaded);
+        return previous != null ? previous : loaded;
+    }
+
+    /**
+     * Метод делает недействительными все результаты пользователя userId на всех узлах, увеличивая его версию.
+     * Вызывается внутри транзакции, изменяющей клиентов: тогда новая версия фиксируется вместе с изменением,
+     * а результат, прочитанный до фиксации, остается под старой версией. Изменения, которые не хранятся
+     * в базе данных (индексы поиска этого узла), применяются после фиксации, поэтому после них версия
+     * увеличивается еще раз. Запись о версии создается при регистрации пользователя (см. UserService.saveUser)
+     * и при запуске приложения, поэтому здесь она создается в той же транзакции, только если пропала
+     */
+    public void invalidate(Integer userId) {
+        if (userDataVersionRepository.increment(userId) > 0)
+            return;
+        UserDataVersion version = new UserDataVersion(userId);
+        version.setVersion(1);
+        userDataVersionRepository.saveAndFlush(version);
+    }
+
+    /**
+     * Метод возвращает слабый ETag данных пользователя userId, составленный из версии его клиентов в базе данных
+     * и контрольной суммы копии общих клиентов. Обе части не зависят от узла и от перезапуска, поэтому ETag,
+     * выданный одним узлом, проверяется любым другим. Должен вызываться до выборки данных: тогда изменения,
+     * зафиксированные во время выборки, увеличат версию, и следующий запрос получит данные заново
+     */
+    public String etag(Integer userId) {
+        return "W/\"" + version(userId) + "-" + Integer.toHexString(sharedClients.getChecksum()) + "\"";
+    }
+
+    private long version(Integer userId) {
+        return userDataVersionRepository.findVersion(userId).orElse(0L);
+    }
+
+    /**
+     * Метод копирует результат в неизменяемый Slice из ClientSnapshot, не связанный с контекстом персистентности
+     */
+    private static Slice<ClientView> copy(Slice<ClientView> slice) {
+        List<ClientView> content = new ArrayList<>(slice.getNumberOfElements());
+        for (ClientView client : slice.getContent())
+            content.add(client instanceof ClientSnapshot ? client : ClientSnapshot.of(client));
+        return new SliceImpl<>(Collections.unmodifiableList(content), slice.getPageable(), slice.hasNext());
+    }
+
+    /**
+     * Ключ кеша
+     */
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class Key {
+        private final Integer userId;
+        private final long version;
+        private final long sharedVersion;
+        private final List<Object> query;
+    }
+}
@@ -0,0 +1,349 @@
+package ru.gazer.gazer.service;
+
+import org.springframework.stereotype.Component;
+import ru.gazer.gazer.models.ClientSnapshot;
+import ru.gazer.gazer.models.ClientView;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Инвертированный индекс по полям клиентов, разбитый по userId владельца.
+ * Индексируются имя, фамилия, пол, возраст, телефон, серия и номер паспорта. Каждое значение попадает
+ * в индекс как без указания поля ("ivanov"), так и с ним ("last:ivanov"). Индекс хранит копии записей,
+ * поэтому запросы из нескольких слов выполняются целиком в памяти, без обращения к базе данных.
+ * Слово, оканчивающееся на "*", ищется по префиксу. Кроме полей, в индекс можно добавить слова из текста
+ * документа клиента: они находятся словом без указания поля или с префиксом "text:".
+ */
+@Component
+public class ClientSearchIndex {
+
+    /** Префиксы полей, которые можно указать в запросе */
+    private static final String[] FIELDS = {"first", "last", "sex", "age", "phone", "series", "number", "passport"};
+
+    /** Префикс, ограничивающий поиск текстом документов */
+    private static final String TEXT_FIELD = "text:";
+
+    /** Максимальное количество различных слов документа, попадающих в индекс */
+    private static final int MAX_TEXT_TERMS = 10000;
+
+    /** Максимальная длина слова документа, попадающего в индекс */
+    private static final int MAX_TEXT_TERM_LENGTH = 40;
+
+    /** Блокировка, разделяющая поиск и изменение индекса */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Разделы индекса по userId владельца */
+    private final Map<Integer, Partition> partitions = new HashMap<>();
+
+    /** Копии проиндексированных записей по clientId */
+    private final Map<Integer, ClientSnapshot> documents = new HashMap<>();
+
+    /** Слова текста документов по clientId */
+    private final Map<Integer, Set<String>> documentTerms = new HashMap<>();
+
+    /** Изменения индекса после начала перестроения (см. beginRebuild). Равно null, если индекс не перестраивается */
+    private List<Runnable> changes;
+
+    /**
+     * Метод начинает перестроение индекса. Вызывается до выборки записей для rebuild: изменения,
+     * сделанные после этого вызова, запоминаются и повторяются поверх выборки
+     */
+    public void beginRebuild() {
+        lock.writeLock().lock();
+        try {
+            changes = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Метод заменяет содержимое индекса переданными записями и повторяет изменения, сделанные после beginRebuild
+     */
+    public void rebuild(Collection<? extends ClientView> clients) {
+        lock.writeLock().lock();
+        try {
+            partitions.clear();
+            documents.clear();
+            documentTerms.clear();
+            for (ClientView client : clients)
+                put(ClientSnapshot.of(client));
+            if (changes != null)
+                changes.forEach(Runnable::run);
+            changes = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Метод добавляет клиента в индекс или обновляет его запись
+     */
+    public void add(ClientSnapshot client) {
+        apply(() -> {
+            Set<String> text = removeText(client.getClientId());
+            remove(documents.get(client.getClientId()));
+            put(client);
+            if (text != null)
+                putText(client, text);
+        });
+    }
+
+    /**
+     * Метод удаляет клиента из индекса
+     */
+    public void remove(Integer clientId) {
+        apply(() -> {
+            removeText(clientId);
+            remove(documents.get(clientId));
+        });
+    }
+
+    /**
+     * Метод удаляет из индекса всех клиентов пользователя
+     */
+    public void removeUser(Integer userId) {
+        apply(() -> {
+            Partition partition = partitions.remove(userId);
+            if (partition != null) {
+                documents.keySet().removeAll(partition.clientIds);
+                documentTerms.keySet().removeAll(partition.clientIds);
+            }
+        });
+    }
+
+    /**
+     * Метод добавляет в индекс слова текста документа клиента, заменяя добавленные ранее.
+     * Если клиента нет в индексе, то текст не добавляется
+     */
+    public void addDocumentText(Integer clientId, String text) {
+        Set<String> terms = textTerms(text);
+        apply(() -> {
+            ClientSnapshot client = documents.get(clientId);
+            if (client == null)
+                return;
+            removeText(clientId);
+            putText(client, terms);
+        });
+    }
+
+    /**
+     * Метод выполняет изменение индекса и запоминает его, если индекс перестраивается
+     */
+    private void apply(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+            if (changes != null)
+                changes.add(change);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Метод ищет клиентов пользователей userIds, запись которых содержит все слова запроса.
+     * Возвращает не более limit записей, упорядоченных по clientId
+     */
+    public List<ClientSnapshot> search(String query, List<Integer> userIds, int limit) {
+        List<String> terms = parse(query);
+        if (terms.isEmpty())
+            return Collections.emptyList();
+        List<Integer> found = new ArrayList<>();
+        List<ClientSnapshot> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Integer userId : new LinkedHashSet<>(userIds)) {
+                Partition partition = partitions.get(userId);
+                if (partition != null)
+                    found.addAll(partition.match(terms));
+            }
+            Collections.sort(found);
+            for (int i = 0; i < found.size() && i < limit; i++)
+                result.add(documents.get(found.get(i)));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Метод разбивает запрос на нормализованные слова
+     */
+    static List<String> parse(String query) {
+        List<String> terms = new ArrayList<>();
+        if (query == null)
+            return terms;
+        for (String token : query.split("\\s+")) {
+            String term = ClientNameIndex.normalize(token);
+            if (!term.isEmpty() && !term.equals("*") && !term.endsWith(":"))
+                terms.add(term);
+        }
+        return terms;
+    }
+
+    /**
+     * Метод возвращает слова, под которыми запись клиента хранится в индексе
+     */
+    static Set<String> terms(ClientSnapshot client) {
+        String[] values = {client.getFirstName(), client.getLastName(), client.getSex(), client.getAge(),
+                client.getPhone(), client.getPassportSeries(), client.getPassportNumber(),
+                nullToEmpty(client.getPassportSeries()) + nullToEmpty(client.getPassportNumber())};
+        Set<String> terms = new HashSet<>();
+        for (int i = 0; i < values.length; i++) {
+            String value = ClientNameIndex.normalize(values[i]);
+            if (value.isEmpty())
+                continue;
+            terms.add(value);
+            terms.add(FIELDS[i] + ":" + value);
+        }
+        return terms;
+    }
+
+    /**
+     * Метод разбивает текст документа на нормализованные слова. Учитываются слова длиной от 2 до
+     * MAX_TEXT_TERM_LENGTH символов, не больше MAX_TEXT_TERMS различных слов
+     */
+    static Set<String> textTerms(String text) {
+        Set<String> terms = new HashSet<>();
+        if (text == null)
+            return terms;
+        for (String token : text.split("[^\\p{L}\\p{N}]+")) {
+            String term = ClientNameIndex.normalize(token);
+            if (term.length() < 2 || term.length() > MAX_TEXT_TERM_LENGTH)
+                continue;
+            terms.add(term);
+            if (terms.size() >= MAX_TEXT_TERMS)
+                break;
+        }
+        return terms;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private void put(ClientSnapshot client) {
+        Partition partition = partitions.computeIfAbsent(client.getUserId(), id -> new Partition());
+        partition.clientIds.add(client.getClientId());
+        for (String term : terms(client))
+            partition.postings.computeIfAbsent(term, t -> new HashSet<>()).add(client.getClientId());
+        documents.put(client.getClientId(), client);
+    }
+
+    private void putText(ClientSnapshot client, Set<String> terms) {
+        Partition partition = partitions.get(client.getUserId());
+        if (partition == null)
+            return;
+        for (String term : terms)
+            partition.textPostings.computeIfAbsent(term, t -> new HashSet<>()).add(client.getClientId());
+        documentTerms.put(client.getClientId(), terms);
+    }
+
+    private Set<String> removeText(Integer clientId) {
+        Set<String> terms = documentTerms.remove(clientId);
+        ClientSnapshot client = documents.get(clientId);
+        if (terms == null || client == null)
+            return terms;
+        Partition partition = partitions.get(client.getUserId());
+        if (partition == null)
+            return terms;
+        for (String term : terms) {
+            Set<Integer> clientIds = partition.textPostings.get(term);
+            if (clientIds == null)
+                continue;
+            clientIds.remove(clientId);
+            if (clientIds.isEmpty())
+                partition.textPostings.remove(term);
+        }
+        return terms;
+    }
+
+    private void remove(ClientSnapshot client) {
+        if (client == null)
+            return;
+        documents.remove(client.getClientId());
+        Partition partition = partitions.get(client.getUserId());
+        if (partition == null)
+            return;
+        partition.clientIds.remove(client.getClientId());
+        for (String term : terms(client)) {
+            Set<Integer> clientIds = partition.postings.get(term);
+            if (clientIds == null)
+                continue;
+            clientIds.remove(client.getClientId());
+            if (clientIds.isEmpty())
+                partition.postings.remove(term);
+        }
+        if (partition.clientIds.isEmpty())
+            partitions.remove(client.getUserId());
+    }
+
+    /** Раздел индекса, относящийся к одному пользователю */
+    private static class Partition {
+        private final Set<Integer> clientIds = new HashSet<>();
+        private final TreeMap<String, Set<Integer>> postings = new TreeMap<>();
+        private final TreeMap<String, Set<Integer>> textPostings = new TreeMap<>();
+
+        /**
+         * Метод возвращает clientId записей, содержащих все слова. Пересечение начинается
+         * с самого короткого списка, поэтому стоимость определяется самым редким словом
+         */
+        private Set<Integer> match(List<String> terms) {
+            List<Set<Integer>> lists = new ArrayList<>();
+            for (String term : terms) {
+                Set<Integer> clientIds = lookup(term);
+                if (clientIds.isEmpty())
+                    return Collections.emptySet();
+                lists.add(clientIds);
+            }
+            lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+            Set<Integer> result = new HashSet<>(lists.get(0));
+            for (int i = 1; i < lists.size() && !result.isEmpty(); i++)
+                result.retainAll(lists.get(i));
+            return result;
+        }
+
+        /**
+         * Метод возвращает clientId записей, содержащих слово. Слово без указания поля ищется
+         * и в полях, и в тексте документов, слово с префиксом "text:" - только в тексте документов
+         */
+        private Set<Integer> lookup(String term) {
+            if (term.startsWith(TEXT_FIELD))
+                return lookup(textPostings, term.substring(TEXT_FIELD.length()));
+            Set<Integer> clientIds = lookup(postings, term);
+            if (term.indexOf(':') >= 0 || textPostings.isEmpty())
+                return clientIds;
+            Set<Integer> textClientIds = lookup(textPostings, term);
+            if (textClientIds.isEmpty())
+                return clientIds;
+            if (clientIds.isEmpty())
+                return textClientIds;
+            Set<Integer> union = new HashSet<>(clientIds);
+            union.addAll(textClientIds);
+            return union;
+        }
+
+        private static Set<Integer> lookup(TreeMap<String, Set<Integer>> postings, String term) {
+            if (!term.endsWith("*")) {
+                Set<Integer> clientIds = postings.get(term);
+                return clientIds == null ? Collections.<Integer>emptySet() : clientIds;
+            }
+            String prefix = term.substring(0, term.length() - 1);
+            Set<Integer> clientIds = new HashSet<>();
+            for (Set<Integer> ids : postings.subMap(prefix, prefix + Character.MAX_VALUE).values())
+                clientIds.addAll(ids);
+            return clientIds;
+        }
+    }
+}
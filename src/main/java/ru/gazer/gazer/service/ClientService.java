@@ -1,21 +1,43 @@
 package ru.gazer.gazer.service;
 
+import io.micrometer.core.annotation.Timed;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.gazer.gazer.models.Client;
+import ru.gazer.gazer.models.ClientDocument;
+import ru.gazer.gazer.models.ClientDocumentText;
+import ru.gazer.gazer.models.ClientSnapshot;
+import ru.gazer.gazer.models.ClientView;
 import ru.gazer.gazer.repos.ClientRepository;
+import ru.gazer.gazer.repos.DocumentTextRepository;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
 
 /**
  * Класс реализует бизнес логику взаимодействия с таблицей clients базы данных
@@ -23,93 +45,572 @@ import java.util.List;
 @Service
 public class ClientService {
 
+    /** Количество записей на одной странице */
+    private static final int PAGE_SIZE = 15;
+
+    /**
+     * Наибольшее количество клиентов, удаляемых одним вызовом deleteClients. Каждый id передается отдельным
+     * параметром запроса DELETE ... IN, а PostgreSQL принимает не больше 32767 параметров
+     */
+    public static final int MAX_DELETE_IDS = 1000;
+
+    /** Порядок записей при постраничном выводе. Должен совпадать для OFFSET и keyset запросов */
+    private static final Sort PAGE_ORDER = Sort.by("clientId");
+
+    /** Причина отказа в сохранении клиента с занятыми паспортными данными */
+    private static final String PASSPORT_USED = "Клиент с такими паспортными данными уже зарегистрирован";
+
+    /** Ограничение уникальности паспортных данных в пределах пользователя (см. Client) */
+    private static final String PASSPORT_CONSTRAINT = "unique_user_passport";
+
     /** Интерфейс, обеспечивающий взаимодействие с базой данных */
     @Autowired
     private ClientRepository clientRepository;
 
+    /** Шаблон для выполнения кода в транзакции */
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /** Индекс имен и фамилий клиентов для нечеткого поиска */
+    @Autowired
+    private ClientNameIndex clientNameIndex;
+
+    /** Инвертированный индекс по всем полям клиентов */
+    @Autowired
+    private ClientSearchIndex clientSearchIndex;
+
+    /** Экземпляр класса DocumentService */
+    @Autowired
+    private DocumentService documentService;
+
+    /** Фоновая обработка документов */
+    @Autowired
+    private DocumentPipeline documentPipeline;
+
+    /** Интерфейс для взаимодействия с таблицей document_texts */
+    @Autowired
+    private DocumentTextRepository documentTextRepository;
+
+    /** Копия общих клиентов в памяти */
+    @Autowired
+    private SharedClients sharedClients;
+
+    /** Кеш результатов выборки клиентов */
+    @Autowired
+    private ClientResultCache clientResultCache;
+
+    /** Синхронизация индексов поиска между узлами */
+    @Autowired
+    private ClientIndexSync clientIndexSync;
+
+    /**
+     * Метод строит индексы поиска по таблицам clients и document_texts. Вызывается после запуска приложения.
+     * Перестроение индексов начинается до выборки, поэтому клиенты, сохраненные или удаленные во время выборки,
+     * повторяются поверх нее и не теряются
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    @Timed(value = "clients.service", histogram = true)
+    public void rebuildIndexes() {
+        clientNameIndex.beginRebuild();
+        clientSearchIndex.beginRebuild();
+        List<ClientSnapshot> clients = clientRepository.findAllProjectedBy();
+        clientNameIndex.rebuild(clients);
+        clientSearchIndex.rebuild(clients);
+        try (Stream<ClientDocumentText> texts = documentTextRepository.streamAllClientTexts()) {
+            texts.forEach(text -> clientSearchIndex.addDocumentText(text.getClientId(), text.getText()));
+        }
+    }
+
     /**
      * Метод проверяет, существует ли в таблице clients запись с принятыми в качестве аргумента
      * паспортными данными. Если существует, то возвращается true, иначе, false.
+     * Общие клиенты и клиенты пользователя проверяются одним запросом к базе данных, как при сохранении
+     * (saveClient, saveClients), а не по копии общих клиентов в памяти, которая может отставать.
      */
+    @Timed(value = "clients.service", histogram = true)
     public boolean isPassportUsed(String passportSeries, String passportNumber, Integer userId) {
-        Pageable clientsPage = PageRequest.of(0, 15);
-        List<Integer> userIds = Arrays.asList(0, userId);
-        Slice<Client> clients = clientRepository.findClientByPassportSeriesAndPassportNumberAndUserIdIn(passportSeries, passportNumber, userIds, clientsPage);
-        if (clients.getContent().size() > 0)
-            return true;
-        return false;
+        return clientRepository.existsByPassportSeriesAndPassportNumberAndUserIdIn(passportSeries, passportNumber,
+                Arrays.asList(0, userId));
     }
 
     /**
-     * Метод устанавливает значение userId и выполняет сохранения объекта Client в базу данных.
+     * Метод устанавливает значение userId, сохраняет документ клиента в хранилище и выполняет сохранения
+     * объекта Client в базу данных. Уникальность паспортных данных в пределах пользователя обеспечивается
+     * ограничением unique_user_passport, поэтому отдельная проверка перед вставкой нужна только для общих
+     * клиентов (userId = 0). Счетчик ссылок на документ увеличивается в той же транзакции, что сохраняет клиента,
+     * поэтому если паспортные данные уже заняты, то возвращается false, а клиент и ссылка на документ
+     * не сохраняются. Нарушения других ограничений передаются вызывающему.
+     * Поток документа читается только после проверки общих клиентов.
+     * Текст документа извлекается и добавляется в индекс поиска в фоне.
      */
-    public boolean saveClient(Client client, MultipartFile file, Integer userId, String docsPath) {
+    @Timed(value = "clients.service", histogram = true)
+    public boolean saveClient(Client client, InputStream document, Integer userId) throws IOException {
         client.setUserId(userId);
-        clientRepository.save(client);
-        saveFile(file, client.getClientId(), docsPath);
+        if (clientRepository.existsByPassportSeriesAndPassportNumberAndUserId(client.getPassportSeries(), client.getPassportNumber(), 0))
+            return false;
+        StagedDocument staged = documentService.stage(document);
+        client.setDocumentId(staged.getDocumentId());
+        try {
+            try {
+                insert(client, staged, userId);
+            } catch (DataIntegrityViolationException e) {
+                if (isPassportConflict(e))
+                    return false;
+                // Запись о том же документе одновременно создана на другом узле, теперь ее можно заблокировать
+                client.setClientId(null);
+                insert(client, staged, userId);
+            }
+        } catch (DataIntegrityViolationException e) {
+            if (!isPassportConflict(e))
+                throw e;
+            return false;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            documentService.discard(staged);
+        }
+        clientNameIndex.add(client.getClientId(), userId, client.getFirstName(), client.getLastName());
+        clientSearchIndex.add(ClientSnapshot.of(client));
+        clientResultCache.invalidate(userId);
+        documentPipeline.enqueue(client.getDocumentId());
         return true;
 
     }
 
     /**
-     * Метод удаляет из таблицы clients запись с принятым значением clientId
+     * Метод сохраняет пачку клиентов пользователя userId в одной транзакции. Вставки отправляются в базу данных
+     * пакетами JDBC, а идентификаторы выделяются из последовательности блоками. Возвращает номера клиентов
+     * в списке, которые не были сохранены, с описанием причины. Если пачка нарушает ограничение уникальности
+     * паспортных данных, то клиенты сохраняются по одному, чтобы отклонить только конфликтующие записи.
+     * Нарушения других ограничений передаются вызывающему.
      */
-    public void deleteClient(Integer clientId) {
-        clientRepository.deleteById(clientId);
+    @Timed(value = "clients.service", histogram = true)
+    public Map<Integer, String> saveClients(List<Client> clients, Integer userId) {
+        Map<Integer, String> rejected = new TreeMap<>();
+        Set<List<String>> sharedPassports = new HashSet<>();
+        List<String> passportNumbers = new ArrayList<>();
+        for (Client client : clients)
+            passportNumbers.add(client.getPassportNumber());
+        for (ClientView shared : clientRepository.findAllByUserIdAndPassportNumberIn(0, passportNumbers))
+            sharedPassports.add(SharedClients.passportKey(shared.getPassportSeries(), shared.getPassportNumber()));
+        List<Client> accepted = new ArrayList<>();
+        for (int i = 0; i < clients.size(); i++) {
+            Client client = clients.get(i);
+            client.setUserId(userId);
+            if (sharedPassports.contains(SharedClients.passportKey(client.getPassportSeries(), client.getPassportNumber())))
+                rejected.put(i, PASSPORT_USED);
+            else
+                accepted.add(client);
+        }
+        try {
+            transactionTemplate.execute(status -> {
+                clientRepository.saveAll(accepted);
+                clientRepository.flush();
+                if (!accepted.isEmpty()) {
+                    List<Integer> clientIds = new ArrayList<>(accepted.size());
+                    for (Client client : accepted)
+                        clientIds.add(client.getClientId());
+                    clientIndexSync.recordChanges(userId, clientIds);
+                    clientResultCache.invalidate(userId);
+                }
+                return null;
+            });
+        } catch (DataIntegrityViolationException e) {
+            if (!isPassportConflict(e))
+                throw e;
+            for (int i = 0; i < clients.size(); i++) {
+                Client client = clients.get(i);
+                if (rejected.containsKey(i))
+                    continue;
+                client.setClientId(null);
+                try {
+                    insert(client, null, userId);
+                } catch (DataIntegrityViolationException conflict) {
+                    if (!isPassportConflict(conflict))
+                        throw conflict;
+                    rejected.put(i, PASSPORT_USED);
+                    accepted.remove(client);
+                }
+            }
+        }
+        for (Client client : accepted) {
+            clientNameIndex.add(client.getClientId(), userId, client.getFirstName(), client.getLastName());
+            clientSearchIndex.add(ClientSnapshot.of(client));
+        }
+        if (!accepted.isEmpty())
+            clientResultCache.invalidate(userId);
+        return rejected;
     }
 
     /**
-     * Метод выполняет сохранения файла на сервер.
+     * Метод удаляет клиента пользователя userId с принятым значением clientId и освобождает ссылку на его документ.
+     * Общие клиенты и клиенты других пользователей не удаляются (см. deleteClients)
      */
-    private boolean saveFile(MultipartFile file, Integer clientId, String docsPath) {
-        try {
-            Path path = Paths.get(docsPath + clientId + ".pdf");
-            Files.copy(file.getInputStream(), path, StandardCopyOption.REPLACE_EXISTING);
-            return true;
-        } catch (Exception e) {
-            System.out.println("Exception " + e);
-            return false;
+    @Timed(value = "clients.service", histogram = true)
+    public boolean deleteClient(Integer clientId, Integer userId) {
+        return deleteClients(Collections.singleton(clientId), userId) > 0;
+    }
+
+    /**
+     * Метод удаляет клиентов пользователя userId с принятыми значениями clientId одним запросом
+     * DELETE ... WHERE client_id IN (...) AND user_id = ?, поэтому общие клиенты и клиенты других пользователей
+     * не удаляются. Ссылки на документы выбираются и блокируются в той же транзакции, где уменьшаются их счетчики,
+     * поэтому повторная отправка формы не уменьшит счетчик дважды. Документы, на которые не осталось ссылок,
+     * удаляются после фиксации транзакции. Возвращает количество удаленных клиентов.
+     * Если различных clientId больше MAX_DELETE_IDS, то выбрасывается IllegalArgumentException
+     */
+    @Timed(value = "clients.service", histogram = true)
+    public int deleteClients(Collection<Integer> clientIds, Integer userId) {
+        if (clientIds.isEmpty())
+            return 0;
+        Set<Integer> requested = new HashSet<>(clientIds);
+        if (exceedsDeleteLimit(requested))
+            throw new IllegalArgumentException("Нельзя удалить больше " + MAX_DELETE_IDS + " клиентов за один запрос");
+        RemovedDocuments removed = new RemovedDocuments();
+        transactionTemplate.execute(status -> {
+            List<ClientDocument> owned = clientRepository.findDocumentsByClientIdInAndUserId(requested, userId);
+            if (owned.isEmpty())
+                return null;
+            removed.addAll(owned);
+            clientRepository.deleteByClientIdInAndUserId(removed.clientIds, userId);
+            documentService.decrementRefCounts(removed.references);
+            clientIndexSync.recordChanges(userId, removed.clientIds);
+            clientResultCache.invalidate(userId);
+            return null;
+        });
+        if (removed.clientIds.isEmpty())
+            return 0;
+        for (Integer clientId : removed.clientIds) {
+            clientNameIndex.remove(clientId);
+            clientSearchIndex.remove(clientId);
         }
+        clientResultCache.invalidate(userId);
+        purgeDocuments(removed);
+        return removed.clientIds.size();
     }
 
     /**
-     * Метод получает из базы данных одну страницу записей и возвращает ее.
+     * Метод получает одну страницу записей и возвращает ее. Клиенты пользователя выбираются из базы данных
+     * окном, которое начинается на количество общих клиентов раньше смещения страницы, и сливаются
+     * с общими клиентами из копии в памяти в порядке clientId. Результат кешируется до изменения клиентов пользователя.
      */
-    public Slice<Client> getClientsPage(Integer page, Integer userId) {
-        Pageable clientsPage = PageRequest.of(page, 15);
-        List<Integer> userIds = Arrays.asList(0, userId);
-        Slice<Client> clients = clientRepository.findAllByUserIdIn(userIds, clientsPage);
-        return clients;
+    @Transactional(readOnly = true)
+    @Timed(value = "clients.service", histogram = true)
+    public Slice<ClientView> getClientsPage(Integer page, Integer userId) {
+        return clientResultCache.get(userId, () -> loadClientsPage(page, userId), "page", page);
+    }
+
+    private Slice<ClientView> loadClientsPage(Integer page, Integer userId) {
+        Pageable clientsPage = PageRequest.of(page, PAGE_SIZE, PAGE_ORDER);
+        List<ClientSnapshot> shared = sharedClients.all();
+        long offset = clientsPage.getOffset();
+        long start = Math.max(0, offset - shared.size());
+        int limit = (int) (offset - start) + PAGE_SIZE + 1;
+        List<ClientSnapshot> own = clientRepository.findAllByUserId(userId, new OffsetPageRequest(start, limit, PAGE_ORDER)).getContent();
+        if (own.isEmpty() && start > 0)
+            return new SliceImpl<>(Collections.<ClientView>emptyList(), clientsPage, false);
+        boolean exhausted = own.size() < limit;
+        Integer first = own.isEmpty() ? null : own.get(0).getClientId();
+        Integer last = own.isEmpty() ? null : own.get(own.size() - 1).getClientId();
+        List<ClientView> window = new ArrayList<>();
+        for (ClientSnapshot client : shared)
+            if ((start == 0 || client.getClientId() > first) && (exhausted || client.getClientId() < last))
+                window.add(client);
+        List<ClientView> merged = mergeByClientId(own, window, false);
+        long windowOffset = start == 0 ? 0 : start + sharedClients.countBefore(first);
+        int from = (int) Math.min(merged.size(), offset - windowOffset);
+        List<ClientView> content = merged.subList(from, Math.min(merged.size(), from + PAGE_SIZE + 1));
+        return slice(content, clientsPage, false);
     }
 
     /**
-     * Метод получает из базы данных одну страницу записей, которые содержат в полях
-     * first_name и last_name искомые значения, и возвращает ее.
+     * Метод получает из базы данных страницу записей, следующих за записью с clientId, равным lastClientId.
+     * В отличие от getClientsPage не использует OFFSET, поэтому стоимость запроса не зависит от номера страницы.
+     * Номер страницы нужен только для того, чтобы Slice корректно сообщал о наличии предыдущей страницы.
      */
-    public Slice<Client> getByName(String firstName, String lastName, Integer userId) {
-        Pageable clientsPage = PageRequest.of(0, 15);
-        List<Integer> userIds = Arrays.asList(0, userId);
-        Slice<Client> clients = clientRepository.findClientsByFirstNameAndLastNameAndUserIdIn(firstName, lastName, userIds, clientsPage);
+    @Transactional(readOnly = true)
+    @Timed(value = "clients.service", histogram = true)
+    public Slice<ClientView> getClientsPageAfter(Integer page, Integer lastClientId, Integer userId) {
+        Pageable clientsPage = PageRequest.of(0, PAGE_SIZE, PAGE_ORDER);
+        Slice<ClientSnapshot> clients = clientRepository.findAllByUserIdAndClientIdGreaterThan(userId, lastClientId, clientsPage);
+        List<ClientView> merged = mergeByClientId(clients.getContent(), sharedClients.after(lastClientId, PAGE_SIZE + 1), false);
+        return slice(merged, PageRequest.of(page, PAGE_SIZE, PAGE_ORDER), clients.hasNext());
+    }
+
+    /**
+     * Метод получает из базы данных страницу записей, предшествующих записи с clientId, равным firstClientId.
+     * Записи выбираются в обратном порядке и разворачиваются. Если перед страницей записей больше нет,
+     * то она считается первой, независимо от переданного номера страницы.
+     */
+    @Transactional(readOnly = true)
+    @Timed(value = "clients.service", histogram = true)
+    public Slice<ClientView> getClientsPageBefore(Integer page, Integer firstClientId, Integer userId) {
+        Pageable clientsPage = PageRequest.of(0, PAGE_SIZE, PAGE_ORDER.descending());
+        Slice<ClientSnapshot> clients = clientRepository.findAllByUserIdAndClientIdLessThan(userId, firstClientId, clientsPage);
+        List<ClientView> merged = mergeByClientId(clients.getContent(), sharedClients.before(firstClientId, PAGE_SIZE + 1), true);
+        boolean hasPrevious = clients.hasNext() || merged.size() > PAGE_SIZE;
+        List<ClientView> content = new ArrayList<>(merged.subList(0, Math.min(merged.size(), PAGE_SIZE)));
+        Collections.reverse(content);
+        int pageNum = hasPrevious ? Math.max(page, 1) : 0;
+        return new SliceImpl<>(content, PageRequest.of(pageNum, PAGE_SIZE, PAGE_ORDER), true);
+    }
+
+    /**
+     * Метод ищет клиентов по имени и фамилии и возвращает первую страницу результатов.
+     * Поиск выполняется по индексу ClientNameIndex: без учета регистра, по префиксу и с опечатками,
+     * результаты упорядочены по степени совпадения. Клиенты пользователя с точно совпадающими именем
+     * и фамилией всегда выбираются и из базы данных: индекс этого узла получает клиентов, сохраненных
+     * на других узлах, с задержкой (см. ClientIndexSync). Пока индекс не построен, выполняется только
+     * точный поиск в базе данных. Найденные общие клиенты берутся из копии в памяти.
+     * Результат кешируется до изменения клиентов пользователя.
+     */
+    @Transactional(readOnly = true)
+    @Timed(value = "clients.service", histogram = true)
+    public Slice<ClientView> getByName(String firstName, String lastName, Integer userId) {
+        return clientResultCache.get(userId, () -> loadByName(firstName, lastName, userId), "name", firstName, lastName);
+    }
+
+    private Slice<ClientView> loadByName(String firstName, String lastName, Integer userId) {
+        Pageable clientsPage = PageRequest.of(0, PAGE_SIZE);
+        Slice<ClientSnapshot> exact = clientRepository.findClientsByFirstNameAndLastNameAndUserId(firstName, lastName, userId, clientsPage);
+        if (!clientNameIndex.isReady()) {
+            List<ClientView> merged = new ArrayList<ClientView>(sharedClients.findByName(firstName, lastName));
+            merged.addAll(exact.getContent());
+            return slice(merged, clientsPage, exact.hasNext());
+        }
+        List<Integer> ranked = clientNameIndex.search(firstName, lastName, Arrays.asList(SharedClients.SHARED_USER_ID, userId), PAGE_SIZE + 1);
+        List<ClientView> clients = new ArrayList<>();
+        Set<Integer> indexed = new HashSet<>(ranked);
+        for (ClientSnapshot client : exact.getContent())
+            if (!indexed.contains(client.getClientId()))
+                clients.add(client);
+        clients.addAll(fetch(ranked, userId));
+        boolean hasNext = clients.size() > PAGE_SIZE || exact.hasNext();
+        return new SliceImpl<>(clients.subList(0, Math.min(clients.size(), PAGE_SIZE)), clientsPage, hasNext);
+    }
+
+    /**
+     * Метод возвращает клиентов с перечисленными clientId в том же порядке. Общие клиенты берутся из копии
+     * в памяти, а клиенты пользователя - из базы данных. Клиенты, удаленные на другом узле, но еще
+     * не убранные из индексов этого узла, не возвращаются
+     */
+    private List<ClientView> fetch(List<Integer> clientIds, Integer userId) {
+        if (clientIds.isEmpty())
+            return Collections.emptyList();
+        Map<Integer, ClientView> found = new HashMap<>();
+        List<Integer> own = new ArrayList<>();
+        for (Integer clientId : clientIds) {
+            Optional<ClientSnapshot> shared = sharedClients.get(clientId);
+            if (shared.isPresent())
+                found.put(clientId, shared.get());
+            else
+                own.add(clientId);
+        }
+        if (!own.isEmpty())
+            for (ClientView client : clientRepository.findAllByClientIdInAndUserId(own, userId))
+                found.put(client.getClientId(), client);
+        List<ClientView> clients = new ArrayList<>();
+        for (Integer clientId : clientIds)
+            if (found.containsKey(clientId))
+                clients.add(found.get(clientId));
         return clients;
     }
 
     /**
-     * Метод получает из базы данных единственную запись на странице, которая содержит в полях
+     * Метод получает единственную запись на странице, которая содержит в полях
      * passport_series и passport_number искомые значения, и возвращает ее.
+     * Общий клиент берется из копии в памяти, а клиент пользователя - из базы данных.
+     * Результат кешируется до изменения клиентов пользователя.
      */
-    public Slice<Client> getByPassport(String passportSeries, String passportNumber, Integer userId) {
+    @Transactional(readOnly = true)
+    @Timed(value = "clients.service", histogram = true)
+    public Slice<ClientView> getByPassport(String passportSeries, String passportNumber, Integer userId) {
+        return clientResultCache.get(userId, () -> loadByPassport(passportSeries, passportNumber, userId),
+                "passport", passportSeries, passportNumber);
+    }
+
+    private Slice<ClientView> loadByPassport(String passportSeries, String passportNumber, Integer userId) {
         Pageable clientsPage = PageRequest.of(0, 15);
+        Slice<ClientSnapshot> clients = clientRepository.findClientByPassportSeriesAndPassportNumberAndUserId(passportSeries, passportNumber, userId, clientsPage);
+        Optional<ClientSnapshot> shared = sharedClients.findByPassport(passportSeries, passportNumber);
+        List<ClientView> merged = new ArrayList<>();
+        shared.ifPresent(merged::add);
+        merged.addAll(clients.getContent());
+        return slice(merged, clientsPage, clients.hasNext());
+    }
+
+    /**
+     * Метод возвращает клиента с принятым значением clientId, если это общий клиент или клиент пользователя userId.
+     * Общий клиент берется из копии в памяти, а клиент пользователя - из базы данных
+     */
+    @Transactional(readOnly = true)
+    @Timed(value = "clients.service", histogram = true)
+    public Optional<ClientView> getClient(Integer clientId, Integer userId) {
+        ClientSnapshot client = sharedClients.get(clientId)
+                .orElseGet(() -> clientRepository.findByClientIdAndUserId(clientId, userId).orElse(null));
+        return Optional.ofNullable(client);
+    }
+
+    /**
+     * Метод ищет клиентов пользователя и общих клиентов по словам запроса, например
+     * "ivanov 30" или "last:ivanov phone:8800*". Запрос выполняется по индексу ClientSearchIndex,
+     * а найденные клиенты пользователя читаются из базы данных одним запросом по clientId (см. fetch).
+     * Индекс этого узла получает изменения других узлов с задержкой (см. ClientIndexSync), поэтому
+     * клиент, удаленный на другом узле, не возвращается и до синхронизации.
+     */
+    @Transactional(readOnly = true)
+    @Timed(value = "clients.service", histogram = true)
+    public Slice<ClientView> search(String query, Integer userId) {
         List<Integer> userIds = Arrays.asList(0, userId);
-        Slice<Client> clients = clientRepository.findClientByPassportSeriesAndPassportNumberAndUserIdIn(passportSeries, passportNumber, userIds, clientsPage);
-        return clients;
+        List<Integer> clientIds = new ArrayList<>();
+        for (ClientSnapshot client : clientSearchIndex.search(query, userIds, PAGE_SIZE + 1))
+            clientIds.add(client.getClientId());
+        boolean hasNext = clientIds.size() > PAGE_SIZE;
+        if (hasNext)
+            clientIds = clientIds.subList(0, PAGE_SIZE);
+        return new SliceImpl<>(fetch(clientIds, userId), PageRequest.of(0, PAGE_SIZE), hasNext);
     }
 
     /**
-     * Метод удаляет всех клиентов, добавленных пользователем. Вызывается при удалении пользователя.
+     * Метод убирает клиентов пользователя из индексов поиска и кеша результатов. Вызывается при удалении
+     * пользователя: записи клиентов удаляются позже, в фоне, методом deleteUserClientsChunk.
      */
-    @Transactional
-    public void deleteUserClients(Integer userId) {
-        clientRepository.deleteAllByUserId(userId);
+    @Timed(value = "clients.service", histogram = true)
+    public void forgetUserClients(Integer userId) {
+        clientNameIndex.removeUser(userId);
+        clientSearchIndex.removeUser(userId);
+        clientResultCache.invalidate(userId);
     }
 
+    /**
+     * Метод удаляет не больше limit клиентов пользователя одним запросом в короткой транзакции, вместе
+     * с уменьшением счетчиков ссылок на их документы. Клиенты пачки выбираются и блокируются в той же
+     * транзакции, поэтому счетчики уменьшаются только для клиентов, удаленных этой транзакцией. Если удалено
+     * меньше клиентов, чем выбрано, то транзакция откатывается. Документы, на которые не осталось ссылок,
+     * и файлы клиентов, сохраненные до появления хранилища, удаляются после фиксации транзакции.
+     * Возвращает количество удаленных клиентов, 0 - если клиентов у пользователя не осталось
+     */
+    @Timed(value = "clients.service", histogram = true)
+    public int deleteUserClientsChunk(Integer userId, int limit) {
+        RemovedDocuments removed = new RemovedDocuments();
+        transactionTemplate.execute(status -> {
+            List<ClientDocument> chunk = clientRepository.findDocumentsByUserId(userId, PageRequest.of(0, limit, PAGE_ORDER));
+            if (chunk.isEmpty())
+                return null;
+            removed.addAll(chunk);
+            int deleted = clientRepository.deleteByClientIdIn(removed.clientIds);
+            if (deleted != removed.clientIds.size())
+                throw new IllegalStateException("Удалено " + deleted + " клиентов пользователя " + userId
+                        + " из " + removed.clientIds.size() + " выбранных");
+            documentService.decrementRefCounts(removed.references);
+            clientResultCache.invalidate(userId);
+            return null;
+        });
+        if (removed.clientIds.isEmpty())
+            return 0;
+        purgeDocuments(removed);
+        return removed.clientIds.size();
+    }
+
+    /**
+     * Метод сохраняет клиента пользователя userId, ссылку на его документ staged (если он есть) и увеличивает
+     * версию его клиентов в одной транзакции
+     */
+    private void insert(Client client, StagedDocument staged, Integer userId) {
+        transactionTemplate.execute(status -> {
+            clientRepository.saveAndFlush(client);
+            if (staged != null)
+                documentService.reference(staged);
+            clientIndexSync.recordChanges(userId, Collections.singletonList(client.getClientId()));
+            clientResultCache.invalidate(userId);
+            return null;
+        });
+    }
+
+    /**
+     * Метод сообщает, больше ли различных clientId, чем MAX_DELETE_IDS. Повторяющиеся id считаются один раз,
+     * потому что в запрос DELETE ... IN передаются только различные id
+     */
+    public static boolean exceedsDeleteLimit(Collection<Integer> clientIds) {
+        return clientIds.size() > MAX_DELETE_IDS && new HashSet<>(clientIds).size() > MAX_DELETE_IDS;
+    }
+
+    /**
+     * Метод сообщает, нарушено ли исключением e ограничение unique_user_passport. Имя ограничения извлекает
+     * диалект Hibernate: для PostgreSQL это имя ограничения, а для H2 - имя индекса, которое его содержит
+     */
+    static boolean isPassportConflict(DataIntegrityViolationException e) {
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                String name = ((ConstraintViolationException) cause).getConstraintName();
+                return name != null && name.toLowerCase(Locale.ROOT).contains(PASSPORT_CONSTRAINT);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Метод удаляет документы удаленных клиентов, на которые не осталось ссылок, и файлы клиентов,
+     * сохраненные до появления хранилища. Вызывается после фиксации транзакции удаления
+     */
+    private void purgeDocuments(RemovedDocuments removed) {
+        documentService.purge(removed.references.keySet());
+        documentService.deleteLegacyDocuments(removed.legacyClientIds);
+    }
+
+    /**
+     * Метод сливает два упорядоченных по clientId списка клиентов в один, по возрастанию или по убыванию clientId
+     */
+    private static List<ClientView> mergeByClientId(List<? extends ClientView> a, List<? extends ClientView> b, boolean descending) {
+        List<ClientView> merged = new ArrayList<>(a.size() + b.size());
+        int i = 0;
+        int j = 0;
+        while (i < a.size() || j < b.size()) {
+            boolean takeA;
+            if (j == b.size())
+                takeA = true;
+            else if (i == a.size())
+                takeA = false;
+            else {
+                int cmp = a.get(i).getClientId().compareTo(b.get(j).getClientId());
+                takeA = descending ? cmp > 0 : cmp < 0;
+            }
+            merged.add(takeA ? a.get(i++) : b.get(j++));
+        }
+        return merged;
+    }
+
+    /**
+     * Метод обрезает список до размера страницы. Следующая страница есть, если список длиннее страницы
+     * или если ее наличие сообщил запрос к базе данных
+     */
+    private static Slice<ClientView> slice(List<ClientView> clients, Pageable pageable, boolean hasNext) {
+        if (clients.size() > PAGE_SIZE)
+            return new SliceImpl<>(new ArrayList<>(clients.subList(0, PAGE_SIZE)), pageable, true);
+        return new SliceImpl<>(new ArrayList<>(clients), pageable, hasNext);
+    }
+
+    /**
+     * Ссылки на документы удаляемых клиентов: количество ссылок на каждый документ хранилища
+     * и клиенты, документы которых сохранены до появления хранилища
+     */
+    private static final class RemovedDocuments {
+
+        private final List<Integer> clientIds = new ArrayList<>();
+
+        private final List<Integer> legacyClientIds = new ArrayList<>();
+
+        private final Map<String, Integer> references = new HashMap<>();
+
+        void addAll(List<ClientDocument> clients) {
+            for (ClientDocument client : clients) {
+                clientIds.add(client.getClientId());
+                if (client.getDocumentId() == null)
+                    legacyClientIds.add(client.getClientId());
+                else
+                    references.merge(client.getDocumentId(), 1, Integer::sum);
+            }
+        }
+    }
 }
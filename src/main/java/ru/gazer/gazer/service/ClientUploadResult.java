@@ -0,0 +1,25 @@
+package ru.gazer.gazer.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.validation.BindingResult;
+import ru.gazer.gazer.models.Client;
+
+/**
+ * Результат обработки формы добавления клиента, прочитанной из потока multipart запроса
+ */
+@Getter
+@RequiredArgsConstructor
+public class ClientUploadResult {
+
+    /** Итог обработки формы */
+    public enum Outcome { SAVED, INVALID, NOT_PDF, TOO_LARGE, PASSPORT_USED }
+
+    /** Клиент, заполненный полями формы */
+    private final Client client;
+
+    /** Результат привязки и проверки полей формы */
+    private final BindingResult bindingResult;
+
+    private final Outcome outcome;
+}
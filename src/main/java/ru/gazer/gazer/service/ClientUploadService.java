@@ -0,0 +1,127 @@
+package ru.gazer.gazer.service;
+
+import org.apache.commons.fileupload.FileCountLimitExceededException;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.commons.fileupload.util.Streams;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+import org.springframework.web.bind.WebDataBinder;
+import ru.gazer.gazer.models.Client;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Класс обрабатывает форму добавления клиента, читая тело multipart запроса как поток.
+ * Файл не буферизуется контейнером во временный файл: его байты проверяются (сигнатура PDF и размер),
+ * хешируются и записываются в хранилище документов за один проход по мере чтения запроса.
+ * Поле файла должно идти в форме последним, чтобы к его началу поля клиента были уже прочитаны и проверены.
+ * Количество частей формы ограничено: setFileCountMax проверяется только при разборе всего запроса,
+ * поэтому при потоковом чтении части подсчитываются здесь.
+ */
+@Service
+public class ClientUploadService {
+
+    /** Имя поля формы с файлом документа */
+    private static final String FILE_FIELD = "file";
+
+    /** Экземпляр класса ClientService */
+    @Autowired
+    private ClientService clientService;
+
+    /** Валидатор полей клиента */
+    @Autowired
+    private Validator validator;
+
+    /** Максимальный размер файла документа */
+    @Value("${spring.servlet.multipart.max-file-size}")
+    private DataSize maxFileSize;
+
+    /** Максимальное количество частей формы. Форма клиента содержит 8 полей */
+    @Value("${clients.upload.max-parts}")
+    private int maxParts;
+
+    /** Максимальный размер запроса */
+    @Value("${spring.servlet.multipart.max-request-size}")
+    private DataSize maxRequestSize;
+
+    /**
+     * Метод читает форму из запроса, проверяет поля клиента и, если они корректны, сохраняет
+     * клиента пользователя userId вместе с документом. Возвращает итог обработки
+     */
+    public ClientUploadResult addClient(HttpServletRequest request, Integer userId) throws IOException {
+        Client client = new Client();
+        WebDataBinder binder = new WebDataBinder(client, "client");
+        binder.setValidator(new SpringValidatorAdapter(validator));
+        MutablePropertyValues fields = new MutablePropertyValues();
+        if (!ServletFileUpload.isMultipartContent(request))
+            return result(binder, fields, ClientUploadResult.Outcome.NOT_PDF);
+        ServletFileUpload upload = new ServletFileUpload();
+        upload.setSizeMax(maxRequestSize.toBytes());
+        upload.setFileCountMax(maxParts);
+        upload.setHeaderEncoding(StandardCharsets.UTF_8.name());
+        try {
+            FileItemIterator items = upload.getItemIterator(request);
+            int parts = 0;
+            while (items.hasNext()) {
+                FileItemStream item = items.next();
+                if (++parts > maxParts)
+                    return result(binder, fields, ClientUploadResult.Outcome.TOO_LARGE);
+                if (item.isFormField()) {
+                    try (InputStream in = item.openStream()) {
+                        fields.add(item.getFieldName(), Streams.asString(in, StandardCharsets.UTF_8.name()));
+                    }
+                    continue;
+                }
+                if (!FILE_FIELD.equals(item.getFieldName()))
+                    continue;
+                ClientUploadResult result = result(binder, fields, ClientUploadResult.Outcome.INVALID);
+                if (result.getBindingResult().hasErrors())
+                    return result;
+                try (InputStream in = new PdfValidatingInputStream(item.openStream(), maxFileSize.toBytes())) {
+                    boolean saved = clientService.saveClient(client, in, userId);
+                    return new ClientUploadResult(client, binder.getBindingResult(),
+                            saved ? ClientUploadResult.Outcome.SAVED : ClientUploadResult.Outcome.PASSPORT_USED);
+                } catch (InvalidDocumentException e) {
+                    return new ClientUploadResult(client, binder.getBindingResult(),
+                            e.getReason() == InvalidDocumentException.Reason.TOO_LARGE
+                                    ? ClientUploadResult.Outcome.TOO_LARGE : ClientUploadResult.Outcome.NOT_PDF);
+                }
+            }
+        } catch (FileUploadBase.SizeLimitExceededException e) {
+            return result(binder, fields, ClientUploadResult.Outcome.TOO_LARGE);
+        } catch (FileUploadBase.FileUploadIOException e) {
+            if (e.getCause() instanceof FileUploadBase.SizeLimitExceededException
+                    || e.getCause() instanceof FileUploadBase.FileSizeLimitExceededException)
+                return result(binder, fields, ClientUploadResult.Outcome.TOO_LARGE);
+            throw e;
+        } catch (FileCountLimitExceededException e) {
+            return result(binder, fields, ClientUploadResult.Outcome.TOO_LARGE);
+        } catch (FileUploadException e) {
+            throw new IOException(e);
+        }
+        return result(binder, fields, ClientUploadResult.Outcome.NOT_PDF);
+    }
+
+    /**
+     * Метод привязывает прочитанные поля формы к клиенту, проверяет их и возвращает результат с итогом outcome.
+     * Ошибки полей, если они есть, содержатся в bindingResult результата
+     */
+    private static ClientUploadResult result(WebDataBinder binder, MutablePropertyValues fields,
+                                             ClientUploadResult.Outcome outcome) {
+        binder.bind(fields);
+        binder.validate();
+        return new ClientUploadResult((Client) binder.getTarget(), binder.getBindingResult(), outcome);
+    }
+}
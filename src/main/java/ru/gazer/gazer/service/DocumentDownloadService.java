@@ -0,0 +1,242 @@
+package ru.gazer.gazer.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс отдает файлы документов клиентов по HTTP. Поддерживает запросы диапазонов байт (Range)
+ * и условные запросы по ETag и Last-Modified. ETag документа из хранилища - его SHA-256, поэтому он одинаков
+ * на всех узлах и меняется только вместе с содержимым. Если контейнер поддерживает sendfile, файл передается
+ * им без копирования через пространство пользователя. Иначе файл копируется в ответ через буфер: поток
+ * ответа сервлета не принимает канал файла, поэтому FileChannel.transferTo в него тоже копировал бы через буфер.
+ * Количество одновременно открытых файлов ограничено.
+ */
+@Service
+public class DocumentDownloadService {
+
+    /** Атрибуты запроса, через которые Tomcat принимает файл для передачи системным вызовом sendfile */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /** Размер буфера для копирования файла в ответ */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Значение заголовка Cache-Control. Документ клиента не изменяется, поэтому браузер может не перезапрашивать его */
+    private static final String CACHE_CONTROL = "private, max-age=3600";
+
+    /** Ограничение количества одновременно открытых файлов */
+    private final Semaphore openFiles;
+
+    /** Сколько миллисекунд запрос ожидает освобождения файлового дескриптора */
+    private final long openTimeoutMillis;
+
+    /** Количество байт документов, записанных в ответ */
+    private final Counter sentBytes;
+
+    /** Количество байт документов, переданных контейнеру для отправки через sendfile */
+    private final Counter sendfileBytes;
+
+    public DocumentDownloadService(@Value("${document.download.max-open-files}") int maxOpenFiles,
+                                   @Value("${document.download.open-timeout-ms}") long openTimeoutMillis,
+                                   MeterRegistry meterRegistry) {
+        this.openFiles = new Semaphore(maxOpenFiles);
+        this.openTimeoutMillis = openTimeoutMillis;
+        this.sentBytes = Counter.builder("documents.download")
+                .baseUnit(BaseUnits.BYTES)
+                .description("Количество байт документов, записанных в ответ")
+                .register(meterRegistry);
+        this.sendfileBytes = Counter.builder("documents.download.sendfile")
+                .baseUnit(BaseUnits.BYTES)
+                .description("Количество байт документов, переданных контейнеру для отправки через sendfile. "
+                        + "Контейнер отправляет их после возврата из сервлета, и завершение отправки не учитывается")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Метод отправляет PDF файл документа под именем fileName. Если заголовки If-None-Match или If-Modified-Since
+     * совпадают с текущей версией файла, отправляется ответ 304 без тела. Если передан один диапазон
+     * в заголовке Range, отправляется только он с кодом 206. ETag документа из хранилища - его идентификатор,
+     * а для файла, сохраненного до появления хранилища, - время изменения и длина файла
+     */
+    public void send(StoredDocument document, String fileName,
+                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path file = document.getFile();
+        if (!Files.isRegularFile(file)) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        long length = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis() / 1000 * 1000;
+        String etag = document.getDocumentId() != null
+                ? "\"" + document.getDocumentId() + "\""
+                : "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+        send(file, fileName, length, lastModified, etag, request, response);
+    }
+
+    /**
+     * Метод отправляет PDF файл с заранее известными длиной, временем изменения и ETag. Разрешение на открытие
+     * файла берется для любой передачи тела. При передаче через sendfile контейнер открывает файл после возврата
+     * из сервлета, поэтому разрешение ограничивает количество одновременно начинаемых передач, а файлы, открытые
+     * незавершенными передачами, ограничены количеством соединений (server.tomcat.max-connections)
+     */
+    public void send(Path file, String fileName, long length, long lastModified, String etag,
+                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        boolean partial = false;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && isRangeApplicable(request, etag, lastModified)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(range);
+            } catch (IllegalArgumentException e) {
+                ranges = null;
+            }
+            if (ranges != null && ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length);
+                if (start >= length || start > end) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return;
+                }
+                partial = true;
+            }
+        }
+
+        boolean sendfile = Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT));
+        boolean head = "HEAD".equals(request.getMethod());
+        if (!head && !acquire()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+        try {
+            long count = end - start + 1;
+            response.setStatus(partial ? HttpStatus.PARTIAL_CONTENT.value() : HttpStatus.OK.value());
+            if (partial)
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            response.setContentType("application/pdf");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment;filename=" + fileName);
+            response.setContentLengthLong(count);
+            if (head)
+                return;
+            if (sendfile) {
+                request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, end + 1);
+                sendfileBytes.increment(count);
+                return;
+            }
+            transfer(file, start, count, response);
+        } finally {
+            if (!head)
+                openFiles.release();
+        }
+    }
+
+    /**
+     * Метод сообщает, совпадает ли версия файла у клиента с текущей
+     */
+    private static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null)
+            return ifNoneMatch.trim().equals("*") || containsTag(ifNoneMatch, etag);
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+    }
+
+    /**
+     * Метод проверяет условие If-Range: диапазон отдается, только если файл не изменился
+     */
+    private static boolean isRangeApplicable(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null)
+            return true;
+        if (ifRange.trim().startsWith("\""))
+            return ifRange.trim().equals(etag);
+        long date = dateHeader(request, HttpHeaders.IF_RANGE);
+        return date >= 0 && lastModified <= date;
+    }
+
+    private static boolean containsTag(String header, String etag) {
+        for (String tag : header.split(",")) {
+            if (tag.trim().equals(etag))
+                return true;
+        }
+        return false;
+    }
+
+    private static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private boolean acquire() {
+        try {
+            return openFiles.tryAcquire(openTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Метод копирует count байт файла, начиная с позиции start, в тело ответа. Счетчик отправленных байт
+     * увеличивается после записи каждого буфера, поэтому оборванная клиентом передача учитывается частично
+     */
+    private void transfer(Path file, long start, long count, HttpServletResponse response) throws IOException {
+        OutputStream out = response.getOutputStream();
+        byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, count)];
+        ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                wrapped.clear();
+                wrapped.limit((int) Math.min(buffer.length, remaining));
+                int read = channel.read(wrapped, position);
+                if (read <= 0)
+                    break;
+                out.write(buffer, 0, read);
+                sentBytes.increment(read);
+                position += read;
+                remaining -= read;
+            }
+        }
+        response.flushBuffer();
+    }
+}
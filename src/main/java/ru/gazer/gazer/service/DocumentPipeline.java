@@ -0,0 +1,290 @@
+package ru.gazer.gazer.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.gazer.gazer.models.ClientDocument;
+import ru.gazer.gazer.models.DocumentJob;
+import ru.gazer.gazer.models.DocumentText;
+import ru.gazer.gazer.repos.ClientRepository;
+import ru.gazer.gazer.repos.DocumentJobRepository;
+import ru.gazer.gazer.repos.DocumentTextRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фоновая обработка сохраненных документов: из PDF извлекаются количество страниц и текст,
+ * текст сохраняется в таблицу document_texts и добавляется в индекс поиска клиентов.
+ * Задания хранятся в таблице document_jobs, поэтому переживают перезапуск приложения.
+ * Задания выбираются из таблицы периодически и не больше, чем могут принять рабочие потоки,
+ * поэтому очередь в памяти ограничена, а всплеск загрузок копится в базе данных, не замедляя запросы.
+ * Узел забирает задание условным обновлением записи (см. DocumentJobRepository.claim), поэтому одно задание
+ * обрабатывается одним узлом. Индекс поиска у каждого узла свой: обработанные задания остаются в таблице
+ * в состоянии DONE, и каждый узел при опросе добавляет текст их документов в свой индекс.
+ */
+@Service
+public class DocumentPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentPipeline.class);
+
+    /** Интерфейс для взаимодействия с таблицей document_jobs */
+    @Autowired
+    private DocumentJobRepository documentJobRepository;
+
+    /** Интерфейс для взаимодействия с таблицей document_texts */
+    @Autowired
+    private DocumentTextRepository documentTextRepository;
+
+    /** Интерфейс для взаимодействия с таблицей clients */
+    @Autowired
+    private ClientRepository clientRepository;
+
+    /** Хранилище файлов документов */
+    @Autowired
+    private DocumentStore documentStore;
+
+    /** Инвертированный индекс по всем полям клиентов */
+    @Autowired
+    private ClientSearchIndex clientSearchIndex;
+
+    /**
+     * Кеш результатов выборки клиентов. Версия клиентов увеличивается, когда меняется текст для поиска.
+     * Индекс поиска у каждого узла свой, поэтому версию увеличивает каждый узел, добавивший текст в индекс
+     */
+    @Autowired
+    private ClientResultCache clientResultCache;
+
+    /** Шаблон для выполнения кода в транзакции */
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /** Реестр метрик */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** Количество рабочих потоков */
+    @Value("${document.pipeline.workers}")
+    private int workers;
+
+    /** Количество попыток обработки документа, после которого задание помечается как FAILED */
+    @Value("${document.pipeline.max-attempts}")
+    private int maxAttempts;
+
+    /** Максимальная длина сохраняемого текста документа */
+    @Value("${document.pipeline.max-text-length}")
+    private int maxTextLength;
+
+    /** На сколько миллисекунд задание закрепляется за узлом */
+    @Value("${document.pipeline.lease-ms}")
+    private long leaseMillis;
+
+    /**
+     * На сколько миллисекунд раньше предыдущего опроса выбираются обработанные задания. Покрывает расхождение
+     * часов узлов и транзакции, зафиксированные после предыдущего опроса
+     */
+    @Value("${document.pipeline.sync-overlap-ms}")
+    private long syncOverlapMillis;
+
+    /** Сколько миллисекунд обработанное задание хранится в таблице. Должно быть больше sync-overlap-ms */
+    @Value("${document.pipeline.completed-retention-ms}")
+    private long completedRetentionMillis;
+
+    /** Идентификатор узла, за которым закрепляются задания */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /** Момент предыдущего опроса обработанных заданий */
+    private Instant syncedAt = Instant.now();
+
+    /** Обработанные задания, текст которых уже добавлен в индекс, и моменты их завершения */
+    private final Map<Long, Instant> synced = new HashMap<>();
+
+    /** Рабочие потоки. Очередь исполнителя вмещает не больше workers заданий */
+    private ThreadPoolExecutor executor;
+
+    /** Идентификаторы заданий, переданных рабочим потокам */
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    /** Количество заданий, ожидающих обработки */
+    private final AtomicLong queueDepth = new AtomicLong();
+
+    private Counter succeeded;
+    private Counter failed;
+    private Timer duration;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers), runnable -> {
+                    Thread thread = new Thread(runnable, "document-pipeline-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        Gauge.builder("documents.pipeline.queue.depth", queueDepth, AtomicLong::get)
+                .description("Задания, ожидающие обработки")
+                .register(meterRegistry);
+        Gauge.builder("documents.pipeline.in.flight", inFlight, Set::size)
+                .description("Задания, переданные рабочим потокам")
+                .register(meterRegistry);
+        succeeded = Counter.builder("documents.pipeline.processed").tag("result", "success").register(meterRegistry);
+        failed = Counter.builder("documents.pipeline.processed").tag("result", "failure").register(meterRegistry);
+        duration = Timer.builder("documents.pipeline.duration").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Метод ставит документ в очередь на обработку. Обработка выполняется в фоновом потоке
+     */
+    public void enqueue(String documentId) {
+        documentJobRepository.save(new DocumentJob(documentId, DocumentJob.State.PENDING));
+        queueDepth.incrementAndGet();
+    }
+
+    /**
+     * Метод добавляет в индекс текст документов, обработанных всеми узлами, затем забирает из таблицы
+     * document_jobs столько ожидающих заданий, сколько могут принять рабочие потоки, и передает их на обработку
+     */
+    @Scheduled(fixedDelayString = "${document.pipeline.poll-interval-ms}")
+    public void poll() {
+        sync();
+        queueDepth.set(documentJobRepository.countByState(DocumentJob.State.PENDING));
+        int capacity = 2 * workers - inFlight.size();
+        if (capacity <= 0)
+            return;
+        Instant now = Instant.now();
+        PageRequest page = PageRequest.of(0, capacity + inFlight.size());
+        for (DocumentJob job : documentJobRepository.findClaimable(DocumentJob.State.PENDING, DocumentJob.State.RUNNING, now, page)) {
+            if (capacity == 0)
+                break;
+            if (inFlight.contains(job.getJobId()) || !claim(job, now))
+                continue;
+            inFlight.add(job.getJobId());
+            try {
+                executor.execute(() -> process(job));
+                capacity--;
+            } catch (RejectedExecutionException e) {
+                // Задание останется закрепленным за узлом и будет забрано снова после истечения срока
+                inFlight.remove(job.getJobId());
+                break;
+            }
+        }
+    }
+
+    /**
+     * Метод добавляет в индекс поиска текст документов заданий, обработанных любым узлом после
+     * предыдущего опроса, и удаляет из таблицы давно обработанные задания
+     */
+    void sync() {
+        Instant now = Instant.now();
+        List<DocumentJob> completed = documentJobRepository.findAllByStateAndCompletedAtAfter(
+                DocumentJob.State.DONE, syncedAt.minusMillis(syncOverlapMillis));
+        for (DocumentJob job : completed) {
+            if (synced.putIfAbsent(job.getJobId(), job.getCompletedAt()) == null)
+                index(job.getDocumentId());
+        }
+        syncedAt = now;
+        Instant horizon = now.minusMillis(syncOverlapMillis);
+        synced.values().removeIf(completedAt -> completedAt.isBefore(horizon));
+        transactionTemplate.execute(status -> documentJobRepository.deleteCompletedBefore(
+                DocumentJob.State.DONE, now.minusMillis(completedRetentionMillis)));
+    }
+
+    /**
+     * Метод обрабатывает задание. Текст извлекается только если его еще нет в document_texts,
+     * поэтому одинаковые документы разных клиентов читаются один раз. Текст добавляется в индекс
+     * при следующем опросе (см. sync) на всех узлах, включая этот. Результат записывается условным
+     * обновлением, поэтому задание, удаленное вместе с документом, не создается заново
+     */
+    private void process(DocumentJob job) {
+        long start = System.nanoTime();
+        String documentId = job.getDocumentId();
+        try {
+            DocumentText text = documentTextRepository.findById(documentId).orElse(null);
+            if (text == null) {
+                Path file = documentStore.resolve(documentId);
+                if (Files.exists(file))
+                    text = documentTextRepository.save(extract(documentId, file, maxTextLength));
+            }
+            transactionTemplate.execute(status -> documentJobRepository.complete(
+                    job.getJobId(), nodeId, DocumentJob.State.DONE, Instant.now()));
+            succeeded.increment();
+        } catch (Exception e) {
+            log.warn("Не удалось обработать документ {}", documentId, e);
+            failed.increment();
+            int attempts = job.getAttempts() + 1;
+            DocumentJob.State state = attempts >= maxAttempts ? DocumentJob.State.FAILED : DocumentJob.State.PENDING;
+            transactionTemplate.execute(status -> documentJobRepository.fail(job.getJobId(), nodeId, state, attempts));
+        } finally {
+            duration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            inFlight.remove(job.getJobId());
+        }
+    }
+
+    /**
+     * Метод закрепляет задание за узлом. Возвращает false, если задание уже забрал другой узел
+     */
+    private boolean claim(DocumentJob job, Instant now) {
+        Integer claimed = transactionTemplate.execute(status -> documentJobRepository.claim(job.getJobId(),
+                DocumentJob.State.RUNNING, nodeId, now.plusMillis(leaseMillis), DocumentJob.State.PENDING, now));
+        return claimed != null && claimed > 0;
+    }
+
+    /**
+     * Метод добавляет текст документа в индекс поиска для всех клиентов, ссылающихся на документ
+     */
+    private void index(String documentId) {
+        DocumentText text = documentTextRepository.findById(documentId).orElse(null);
+        if (text == null)
+            return;
+        for (ClientDocument client : clientRepository.findAllByDocumentId(documentId)) {
+            clientSearchIndex.addDocumentText(client.getClientId(), text.getText());
+            clientResultCache.invalidate(client.getUserId());
+        }
+    }
+
+    /**
+     * Метод извлекает из PDF файла количество страниц и текст. Текст обрезается до maxTextLength символов
+     */
+    static DocumentText extract(String documentId, Path file, int maxTextLength) throws IOException {
+        try (PDDocument pdf = PDDocument.load(file.toFile(), MemoryUsageSetting.setupTempFileOnly())) {
+            String text = new PDFTextStripper().getText(pdf).replace('\0', ' ');
+            if (text.length() > maxTextLength)
+                text = text.substring(0, maxTextLength);
+            return new DocumentText(documentId, pdf.getNumberOfPages(), text);
+        }
+    }
+}
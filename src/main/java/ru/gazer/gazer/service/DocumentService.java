@@ -0,0 +1,268 @@
+package ru.gazer.gazer.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.gazer.gazer.models.ClientDocument;
+import ru.gazer.gazer.models.Document;
+import ru.gazer.gazer.repos.ClientRepository;
+import ru.gazer.gazer.repos.DocumentJobRepository;
+import ru.gazer.gazer.repos.DocumentRepository;
+import ru.gazer.gazer.repos.DocumentTextRepository;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Класс управляет документами клиентов: сохраняет их в DocumentStore и ведет в таблице documents
+ * счетчики ссылок, чтобы одинаковые файлы хранились один раз и удалялись вместе с последним клиентом.
+ * Счетчик увеличивается в той же транзакции, что сохраняет клиента, поэтому сбой между ними не оставляет
+ * документ со ссылкой, которой нет.
+ * Изменения одного документа выполняются под блокировкой его записи в таблице documents (SELECT ... FOR UPDATE),
+ * а файл делается доступным и удаляется до фиксации транзакции, поэтому удаление файла не может пересечься
+ * с повторной загрузкой того же содержимого, в том числе на другом узле.
+ */
+@Service
+public class DocumentService {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentService.class);
+
+    /** Количество документов без ссылок, выбираемых за один запрос при очистке */
+    private static final int PURGE_BATCH = 100;
+
+    /** Хранилище файлов документов */
+    @Autowired
+    private DocumentStore documentStore;
+
+    /** Интерфейс для взаимодействия с таблицей documents */
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    /** Интерфейс для взаимодействия с таблицей document_texts */
+    @Autowired
+    private DocumentTextRepository documentTextRepository;
+
+    /** Интерфейс для взаимодействия с таблицей document_jobs */
+    @Autowired
+    private DocumentJobRepository documentJobRepository;
+
+    /** Интерфейс для взаимодействия с таблицей clients */
+    @Autowired
+    private ClientRepository clientRepository;
+
+    /** Шаблон для выполнения кода в транзакции */
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /** Реестр метрик */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** Количество байт загруженных документов */
+    private Counter receivedBytes;
+
+    /** Шаблон для выполнения кода в отдельной транзакции. Блокировка записи документа снимается при ее фиксации */
+    private TransactionTemplate separateTransaction;
+
+    /** Папка, в которой лежат документы, сохраненные до появления хранилища, под именами clientId.pdf */
+    @Value("${document.folder}")
+    private String docsPath;
+
+    @PostConstruct
+    public void init() {
+        receivedBytes = Counter.builder("documents.upload")
+                .baseUnit(BaseUnits.BYTES)
+                .description("Количество байт загруженных документов, включая повторяющиеся")
+                .register(meterRegistry);
+        separateTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        separateTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Метод записывает содержимое документа во временное место хранилища. Документ становится доступным
+     * по идентификатору методом reference, а временный файл после этого удаляется методом discard
+     */
+    public StagedDocument stage(InputStream content) throws IOException {
+        StagedDocument staged = documentStore.stage(content);
+        receivedBytes.increment(staged.getSize());
+        return staged;
+    }
+
+    /**
+     * Метод в текущей транзакции блокирует запись о документе, увеличивает счетчик ссылок или создает запись
+     * и до фиксации транзакции делает файл доступным. Вызывается в транзакции, которая сохраняет клиента.
+     * Если запись о том же документе одновременно создана на другом узле, то выбрасывается
+     * DataIntegrityViolationException, и транзакцию нужно повторить: тогда запись уже можно заблокировать.
+     * Если транзакция, создавшая запись, откатилась, то файл удаляется
+     */
+    public void reference(StagedDocument staged) {
+        String documentId = staged.getDocumentId();
+        boolean created = false;
+        if (documentRepository.findForUpdate(documentId).isPresent()) {
+            documentRepository.incrementRefCount(documentId);
+        } else {
+            documentRepository.saveAndFlush(new Document(documentId, staged.getSize(), 1));
+            created = true;
+        }
+        try {
+            documentStore.commit(staged);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (created && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK)
+                        purgeRolledBack(staged);
+                }
+            });
+        }
+    }
+
+    /**
+     * Метод удаляет временный файл документа
+     */
+    public void discard(StagedDocument staged) {
+        documentStore.discard(staged);
+    }
+
+    /**
+     * Метод уменьшает счетчик ссылок на документ и удаляет файл, извлеченный текст и задания
+     * на обработку, если ссылок не осталось.
+     * Если вызван внутри транзакции, то выполняется после ее фиксации
+     */
+    public void release(String documentId) {
+        if (documentId == null)
+            return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    releaseNow(documentId);
+                }
+            });
+        } else {
+            releaseNow(documentId);
+        }
+    }
+
+    /**
+     * Метод возвращает файл документа клиента, если клиент принадлежит пользователю userId
+     * или является общим. Для клиентов, сохраненных до появления хранилища, возвращается файл clientId.pdf
+     */
+    public Optional<StoredDocument> findClientDocument(Integer clientId, Integer userId) {
+        Optional<ClientDocument> client = clientRepository.findDocumentByClientIdAndUserIdIn(clientId, Arrays.asList(0, userId));
+        if (!client.isPresent())
+            return Optional.empty();
+        String documentId = client.get().getDocumentId();
+        if (documentId == null)
+            return Optional.of(new StoredDocument(Paths.get(docsPath + clientId + ".pdf"), null));
+        return Optional.of(new StoredDocument(documentStore.resolve(documentId), documentId));
+    }
+
+    /**
+     * Метод уменьшает счетчики ссылок на документы в текущей транзакции: documentId - на сколько уменьшить.
+     * Файлы не удаляются, документы без ссылок нужно удалить методом purge после фиксации транзакции
+     */
+    public void decrementRefCounts(Map<String, Integer> references) {
+        for (Map.Entry<String, Integer> reference : references.entrySet())
+            documentRepository.decrementRefCount(reference.getKey(), reference.getValue());
+    }
+
+    /**
+     * Метод удаляет файлы, извлеченный текст и задания документов, на которые не осталось ссылок
+     */
+    public void purge(Collection<String> documentIds) {
+        for (String documentId : documentIds)
+            purgeNow(documentId, false);
+    }
+
+    /**
+     * Метод удаляет все документы, на которые не осталось ссылок, например, оставшиеся после сбоя
+     * между уменьшением счетчиков и вызовом purge
+     */
+    public void purgeUnreferenced() {
+        List<String> documentIds;
+        do {
+            documentIds = documentRepository.findUnreferenced(PageRequest.of(0, PURGE_BATCH));
+            purge(documentIds);
+        } while (documentIds.size() == PURGE_BATCH);
+    }
+
+    /**
+     * Метод удаляет файлы clientId.pdf клиентов, сохраненных до появления хранилища
+     */
+    public void deleteLegacyDocuments(Collection<Integer> clientIds) {
+        for (Integer clientId : clientIds) {
+            try {
+                Files.deleteIfExists(Paths.get(docsPath + clientId + ".pdf"));
+            } catch (IOException e) {
+                log.warn("Не удалось удалить файл документа клиента {}", clientId, e);
+            }
+        }
+    }
+
+    /**
+     * Метод удаляет файл документа, запись о котором была создана в откатившейся транзакции. Запись без ссылок
+     * создается заново в отдельной транзакции, и файл удаляется под ее блокировкой, как любой документ без ссылок.
+     * Если запись уже создана на другом узле, то файл принадлежит ей и не удаляется
+     */
+    private void purgeRolledBack(StagedDocument staged) {
+        try {
+            separateTransaction.execute(status -> documentRepository.saveAndFlush(
+                    new Document(staged.getDocumentId(), staged.getSize(), 0)));
+        } catch (DataIntegrityViolationException e) {
+            return;
+        }
+        purgeNow(staged.getDocumentId(), false);
+    }
+
+    private void releaseNow(String documentId) {
+        purgeNow(documentId, true);
+    }
+
+    /**
+     * Метод в отдельной транзакции, при необходимости уменьшив счетчик ссылок, блокирует запись о документе
+     * и удаляет документ, если ссылок на него не осталось. Файл удаляется до фиксации транзакции,
+     * пока сохранение того же документа ожидает блокировки
+     */
+    private void purgeNow(String documentId, boolean decrement) {
+        separateTransaction.execute(status -> {
+            if (decrement)
+                documentRepository.decrementRefCount(documentId);
+            Optional<Document> document = documentRepository.findForUpdate(documentId);
+            if (!document.isPresent() || document.get().getRefCount() > 0)
+                return null;
+            documentTextRepository.deleteByDocumentId(documentId);
+            documentJobRepository.deleteAllByDocumentId(documentId);
+            documentRepository.deleteUnreferenced(documentId);
+            try {
+                documentStore.delete(documentId);
+            } catch (IOException e) {
+                log.warn("Не удалось удалить документ {}", documentId, e);
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,40 @@
+package ru.gazer.gazer.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Интерфейс хранилища файлов документов. Документ идентифицируется SHA-256 своего содержимого.
+ * Сохранение выполняется в два шага: stage записывает поток во временное место и вычисляет идентификатор,
+ * commit атомарно делает документ доступным. Счетчики ссылок на документы хранятся в базе данных
+ * и ведутся классом DocumentService.
+ */
+public interface DocumentStore {
+
+    /**
+     * Метод записывает содержимое во временное место хранилища и вычисляет его SHA-256
+     */
+    StagedDocument stage(InputStream content) throws IOException;
+
+    /**
+     * Метод делает записанный документ доступным по его идентификатору. Если документ с таким
+     * содержимым уже есть в хранилище, то повторно он не записывается
+     */
+    void commit(StagedDocument document) throws IOException;
+
+    /**
+     * Метод удаляет временные данные документа, если они остались после stage
+     */
+    void discard(StagedDocument document);
+
+    /**
+     * Метод возвращает путь к файлу документа
+     */
+    Path resolve(String documentId);
+
+    /**
+     * Метод удаляет документ из хранилища
+     */
+    void delete(String documentId) throws IOException;
+}
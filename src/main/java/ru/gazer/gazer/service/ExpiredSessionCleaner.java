@@ -0,0 +1,71 @@
+package ru.gazer.gazer.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Удаление истекших сессий из таблицы общего хранилища сессий.
+ * Сессии удаляются пачками по batchSize записей, каждая пачка в отдельной короткой транзакции,
+ * поэтому удаление большого числа сессий не блокирует таблицу надолго. Атрибуты удаляются каскадно.
+ * Заменяет встроенную очистку Spring Session, которая удаляет все истекшие сессии одним запросом.
+ */
+@Service
+@ConditionalOnProperty(name = "spring.session.store-type", havingValue = "jdbc")
+public class ExpiredSessionCleaner {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /** Реестр метрик */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** Таблица сессий */
+    @Value("${spring.session.jdbc.table-name:SPRING_SESSION}")
+    private String tableName;
+
+    /** Количество сессий, удаляемых одним запросом */
+    @Value("${session.cleanup.batch-size}")
+    private int batchSize;
+
+    /** Максимальное количество пачек за один запуск */
+    @Value("${session.cleanup.max-batches}")
+    private int maxBatches;
+
+    private Counter deleted;
+
+    @PostConstruct
+    public void init() {
+        deleted = Counter.builder("sessions.expired.deleted")
+                .description("Удаленные истекшие сессии")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Метод удаляет истекшие сессии, пока очередная пачка не окажется неполной.
+     * Возвращает количество удаленных сессий
+     */
+    @Scheduled(fixedDelayString = "${session.cleanup.interval-ms}")
+    public int cleanup() {
+        String sql = "DELETE FROM " + tableName + " WHERE PRIMARY_ID IN (SELECT PRIMARY_ID FROM " + tableName
+                + " WHERE EXPIRY_TIME < ? ORDER BY EXPIRY_TIME LIMIT ?)";
+        long now = System.currentTimeMillis();
+        int total = 0;
+        for (int batch = 0; batch < maxBatches; batch++) {
+            int count = jdbcTemplate.update(sql, now, batchSize);
+            total += count;
+            deleted.increment(count);
+            if (count < batchSize)
+                break;
+        }
+        return total;
+    }
+}
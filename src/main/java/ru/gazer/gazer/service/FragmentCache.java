@@ -0,0 +1,117 @@
+package ru.gazer.gazer.service;
+
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.resource.ResourceUrlProvider;
+import org.thymeleaf.context.WebContext;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кеш отрисованных фрагментов шаблона fragments.html, которые не зависят от пользователя: подключение стилей
+ * и скриптов, подвал, меню страницы клиентов. Фрагмент отрисовывается один раз для каждой поддерживаемой локали
+ * и версии шаблонов, а страницы вставляют готовый HTML выражением ${@fragmentCache.render('footer')}.
+ * Локаль запроса задается клиентом, поэтому она сводится к одной из templates.locales по языку,
+ * а неизвестные языки используют первую из них: количество записей кеша не зависит от запросов.
+ * Если кеш шаблонов Thymeleaf выключен (spring.thymeleaf.cache=false), то фрагменты отрисовываются каждый раз.
+ * Заметного выигрыша по времени до первого байта и процессорному времени кеш не дает (bench/pages.sh):
+ * страницы небольшие, и отрисовка фрагментов занимает малую часть запроса. Кеш оставлен, потому что
+ * он и не замедляет страницы, хранит не больше (фрагменты × локали) строк, а фрагменты вставляются без
+ * идентификатора сессии в ссылках, так что общий для всех пользователей HTML отдается одинаковым
+ */
+@Component
+public class FragmentCache {
+
+    /** Шаблон с кешируемыми фрагментами */
+    private static final String TEMPLATE = "fragments";
+
+    /** Отрисованные фрагменты */
+    private final Map<Key, String> fragments = new ConcurrentHashMap<>();
+
+    /** Движок шаблонов */
+    @Autowired
+    private SpringTemplateEngine templateEngine;
+
+    /** Построитель ссылок на статические ресурсы с хешем содержимого */
+    @Autowired
+    private ResourceUrlProvider resourceUrlProvider;
+
+    /** Версия шаблонов. Меняется с версией приложения, поэтому фрагменты старой версии не используются */
+    @Value("${templates.version}")
+    private String version;
+
+    /** Поддерживаемые локали. Первая используется для остальных языков */
+    @Value("${templates.locales}")
+    private Locale[] locales;
+
+    /** Включен ли кеш шаблонов */
+    @Value("${spring.thymeleaf.cache:true}")
+    private boolean enabled;
+
+    /**
+     * Метод возвращает HTML фрагмента selector шаблона fragments.html для локали текущего запроса
+     */
+    public String render(String selector) {
+        Locale locale = supported(LocaleContextHolder.getLocale());
+        if (!enabled)
+            return process(selector, locale);
+        return fragments.computeIfAbsent(new Key(selector, locale, version), key -> process(selector, locale));
+    }
+
+    /**
+     * Метод возвращает поддерживаемую локаль с тем же языком, что у locale, или первую поддерживаемую локаль
+     */
+    private Locale supported(Locale locale) {
+        for (Locale supported : locales) {
+            if (supported.getLanguage().equals(locale.getLanguage()))
+                return supported;
+        }
+        return locales[0];
+    }
+
+    /**
+     * Метод отрисовывает фрагмент в контексте текущего запроса. Ссылки на статические ресурсы заменяются
+     * ссылками с хешем содержимого, как это делает ResourceUrlEncodingFilter, но не дополняются
+     * идентификатором сессии, чтобы он не попал в HTML, общий для всех пользователей
+     */
+    private String process(String selector, Locale locale) {
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
+        HttpServletRequest request = attributes.getRequest();
+        String contextPath = request.getContextPath();
+        HttpServletResponse response = new HttpServletResponseWrapper(attributes.getResponse()) {
+            @Override
+            public String encodeURL(String url) {
+                if (!url.startsWith(contextPath))
+                    return url;
+                String resolved = resourceUrlProvider.getForLookupPath(url.substring(contextPath.length()));
+                return resolved == null ? url : contextPath + resolved;
+            }
+        };
+        WebContext context = new WebContext(request, response, request.getServletContext(), locale);
+        return templateEngine.process(TEMPLATE, Collections.singleton(selector), context);
+    }
+
+    /**
+     * Ключ кеша
+     */
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class Key {
+        private final String selector;
+        private final Locale locale;
+        private final String version;
+    }
+}
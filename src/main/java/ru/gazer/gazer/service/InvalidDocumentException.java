@@ -0,0 +1,23 @@
+package ru.gazer.gazer.service;
+
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * Исключение, выбрасываемое при чтении загружаемого документа, если он не является PDF файлом
+ * или превышает допустимый размер
+ */
+@Getter
+public class InvalidDocumentException extends IOException {
+
+    /** Причина, по которой документ отклонен */
+    public enum Reason { NOT_PDF, TOO_LARGE }
+
+    private final Reason reason;
+
+    public InvalidDocumentException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+}
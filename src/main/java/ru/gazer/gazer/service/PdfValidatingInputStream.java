@@ -0,0 +1,101 @@
+package ru.gazer.gazer.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Поток, проверяющий загружаемый документ по мере чтения: первые байты должны совпадать с сигнатурой
+ * PDF файла "%PDF-", а общий размер не должен превышать maxSize. При нарушении выбрасывается
+ * InvalidDocumentException, поэтому неподходящий файл отклоняется, не будучи прочитанным до конца.
+ */
+public class PdfValidatingInputStream extends FilterInputStream {
+
+    /** Сигнатура PDF файла */
+    private static final byte[] MAGIC = {'%', 'P', 'D', 'F', '-'};
+
+    /** Максимальный размер документа в байтах */
+    private final long maxSize;
+
+    /** Количество прочитанных байт */
+    private long position;
+
+    public PdfValidatingInputStream(InputStream in, long maxSize) {
+        super(in);
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            checkComplete();
+            return b;
+        }
+        if (position < MAGIC.length && (byte) b != MAGIC[(int) position])
+            throw notPdf();
+        position++;
+        checkSize();
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n < 0) {
+            checkComplete();
+            return n;
+        }
+        for (int i = 0; i < n && position + i < MAGIC.length; i++)
+            if (b[off + i] != MAGIC[(int) position + i])
+                throw notPdf();
+        position += n;
+        checkSize();
+        return n;
+    }
+
+    /**
+     * Пропуск байт выполняется чтением, чтобы пропущенные байты тоже проверялись
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0)
+                break;
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private void checkComplete() throws InvalidDocumentException {
+        if (position < MAGIC.length)
+            throw notPdf();
+    }
+
+    private void checkSize() throws InvalidDocumentException {
+        if (position > maxSize)
+            throw new InvalidDocumentException(InvalidDocumentException.Reason.TOO_LARGE,
+                    "Размер документа превышает " + maxSize + " байт");
+    }
+
+    private static InvalidDocumentException notPdf() {
+        return new InvalidDocumentException(InvalidDocumentException.Reason.NOT_PDF, "Документ не является PDF файлом");
+    }
+}
@@ -0,0 +1,137 @@
+package ru.gazer.gazer.service;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Row;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.gazer.gazer.models.ClientSnapshot;
+
+import javax.annotation.PreDestroy;
+import java.util.Comparator;
+
+/**
+ * Неблокирующая выборка клиентов из таблицы clients через R2DBC для путей чтения JSON API.
+ * Клиенты выбираются так же, как в ClientService: из базы данных читаются только клиенты пользователя
+ * (user_id = $1), а общие клиенты берутся из копии SharedClients и сливаются с ними по clientId.
+ * Записи передаются потоком Flux по мере запроса подписчиком, поэтому ожидание базы данных не занимает потоки.
+ * Запись в ответ при этом блокирующая (см. ReactiveClientApiController). Использует собственный пул соединений
+ * R2DBC, который не регистрируется в контексте, чтобы не появился второй менеджер транзакций рядом с JPA.
+ * Включается свойством clients.reactive.enabled=true
+ */
+@Component
+@ConditionalOnProperty(name = "clients.reactive.enabled", havingValue = "true")
+public class ReactiveClientSearch {
+
+    /** Выбираемые столбцы таблицы clients */
+    private static final String COLUMNS = "client_id, first_name, last_name, sex, age, passport_series, passport_number, phone, user_id";
+
+    /** Пул соединений R2DBC */
+    private final ConnectionPool pool;
+
+    /** Клиент базы данных */
+    private final DatabaseClient databaseClient;
+
+    /** Копия общих клиентов в памяти */
+    private final SharedClients sharedClients;
+
+    /** Наибольшее количество записей в одном ответе */
+    private final int maxResults;
+
+    public ReactiveClientSearch(@Value("${clients.reactive.url}") String url,
+                                @Value("${spring.datasource.username}") String username,
+                                @Value("${spring.datasource.password}") String password,
+                                @Value("${clients.reactive.pool-size}") int poolSize,
+                                @Value("${clients.reactive.max-results}") int maxResults,
+                                SharedClients sharedClients) {
+        this(ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build(), poolSize, maxResults, sharedClients);
+    }
+
+    ReactiveClientSearch(ConnectionFactoryOptions options, int poolSize, int maxResults, SharedClients sharedClients) {
+        this.pool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+                .initialSize(0)
+                .maxSize(poolSize)
+                .build());
+        this.databaseClient = DatabaseClient.create(pool);
+        this.sharedClients = sharedClients;
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Метод возвращает поток клиентов пользователя и общих клиентов с clientId больше after, упорядоченных по clientId
+     */
+    public Flux<ClientSnapshot> getClients(Integer userId, Integer after, int limit) {
+        int from = after == null ? 0 : after;
+        int count = limit(limit);
+        Flux<ClientSnapshot> own = databaseClient.sql("SELECT " + COLUMNS + " FROM clients WHERE user_id = $1"
+                        + " AND client_id > $2 ORDER BY client_id LIMIT $3")
+                .bind(0, userId)
+                .bind(1, from)
+                .bind(2, count)
+                .map((row, metadata) -> snapshot(row))
+                .all();
+        return merge(Flux.defer(() -> Flux.fromIterable(sharedClients.after(from, count))), own).take(count);
+    }
+
+    /**
+     * Метод возвращает поток клиентов пользователя и общих клиентов с искомыми именем и фамилией
+     */
+    public Flux<ClientSnapshot> getByName(String firstName, String lastName, Integer userId, int limit) {
+        int count = limit(limit);
+        Flux<ClientSnapshot> own = databaseClient.sql("SELECT " + COLUMNS + " FROM clients WHERE user_id = $1"
+                        + " AND first_name = $2 AND last_name = $3 ORDER BY client_id LIMIT $4")
+                .bind(0, userId)
+                .bind(1, firstName)
+                .bind(2, lastName)
+                .bind(3, count)
+                .map((row, metadata) -> snapshot(row))
+                .all();
+        return merge(Flux.defer(() -> Flux.fromIterable(sharedClients.findByName(firstName, lastName))), own).take(count);
+    }
+
+    /**
+     * Метод возвращает поток клиентов пользователя и общих клиентов с искомыми паспортными данными
+     */
+    public Flux<ClientSnapshot> getByPassport(String passportSeries, String passportNumber, Integer userId) {
+        Flux<ClientSnapshot> own = databaseClient.sql("SELECT " + COLUMNS + " FROM clients WHERE user_id = $1"
+                        + " AND passport_series = $2 AND passport_number = $3 ORDER BY client_id")
+                .bind(0, userId)
+                .bind(1, passportSeries)
+                .bind(2, passportNumber)
+                .map((row, metadata) -> snapshot(row))
+                .all();
+        return merge(Flux.defer(() -> Mono.justOrEmpty(sharedClients.findByPassport(passportSeries, passportNumber))), own);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.dispose();
+    }
+
+    /**
+     * Метод сливает общих клиентов и клиентов пользователя, упорядоченных по clientId, в один поток по clientId
+     */
+    private static Flux<ClientSnapshot> merge(Flux<ClientSnapshot> shared, Flux<ClientSnapshot> own) {
+        return Flux.mergeComparing(Comparator.comparing(ClientSnapshot::getClientId), shared, own);
+    }
+
+    private int limit(int limit) {
+        return Math.max(1, Math.min(limit, maxResults));
+    }
+
+    private static ClientSnapshot snapshot(Row row) {
+        return new ClientSnapshot(row.get("client_id", Integer.class), row.get("first_name", String.class),
+                row.get("last_name", String.class), row.get("sex", String.class), row.get("age", String.class),
+                row.get("passport_series", String.class), row.get("passport_number", String.class),
+                row.get("phone", String.class), row.get("user_id", Integer.class));
+    }
+}
@@ -0,0 +1,125 @@
+package ru.gazer.gazer.service;
+
+import org.springframework.core.serializer.DefaultDeserializer;
+import org.springframework.core.serializer.DefaultSerializer;
+import org.springframework.security.authentication.RememberMeAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import ru.gazer.gazer.models.User;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Сериализатор атрибутов сессии для общего хранилища сессий.
+ * Контекст безопасности с пользователем User хранится в компактном виде: тип аутентификации, email
+ * и версия учетных данных. При чтении пользователь загружается через UserDetailsService (то есть из UserDetailsCache,
+ * который сверяет запись с базой данных), поэтому в хранилище не попадают сущность целиком и хеш пароля.
+ * Если пользователь удален или его версия учетных данных отличается от сохраненной в сессии (email или пароль
+ * сменили на любом узле), восстанавливается пустой контекст, и сессия становится неаутентифицированной.
+ * Остальные атрибуты сериализуются стандартной сериализацией Java.
+ */
+public class SessionAttributeSerializer {
+
+    /** Атрибут сериализован стандартной сериализацией Java */
+    static final byte JAVA = 0;
+
+    /** Контекст безопасности после входа по форме */
+    static final byte FORM_LOGIN = 1;
+
+    /** Контекст безопасности после входа по cookie remember-me */
+    static final byte REMEMBER_ME = 2;
+
+    /** Первый байт потока стандартной сериализации Java, записанного без префикса */
+    private static final byte JAVA_STREAM_MAGIC = (byte) 0xAC;
+
+    /** Сервис загрузки пользователей по email */
+    private final UserDetailsService userDetailsService;
+
+    /** Ключ cookie remember-me, общий для всех узлов */
+    private final String rememberMeKey;
+
+    private final DefaultSerializer serializer = new DefaultSerializer();
+
+    private final DefaultDeserializer deserializer;
+
+    public SessionAttributeSerializer(UserDetailsService userDetailsService, String rememberMeKey, ClassLoader classLoader) {
+        this.userDetailsService = userDetailsService;
+        this.rememberMeKey = rememberMeKey;
+        this.deserializer = new DefaultDeserializer(classLoader);
+    }
+
+    /**
+     * Метод сериализует значение атрибута сессии
+     */
+    public byte[] serialize(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            Authentication authentication = value instanceof SecurityContext
+                    ? ((SecurityContext) value).getAuthentication() : null;
+            byte type = typeOf(authentication);
+            out.writeByte(type);
+            if (type == JAVA)
+                serializer.serialize(value, out);
+            else {
+                User user = (User) authentication.getPrincipal();
+                out.writeUTF(user.getEmail());
+                out.writeLong(user.getCredentialsVersion());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Метод восстанавливает значение атрибута сессии. Если пользователь контекста безопасности
+     * был удален или сменил учетные данные, возвращается пустой контекст, и сессия становится неаутентифицированной
+     */
+    public Object deserialize(byte[] data) {
+        try {
+            if (data.length > 0 && data[0] == JAVA_STREAM_MAGIC)
+                return deserializer.deserialize(new ByteArrayInputStream(data));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            byte type = in.readByte();
+            if (type == JAVA)
+                return deserializer.deserialize(in);
+            String email = in.readUTF();
+            long credentialsVersion = in.readLong();
+            UserDetails user;
+            try {
+                user = userDetailsService.loadUserByUsername(email);
+            } catch (UsernameNotFoundException e) {
+                return new SecurityContextImpl();
+            }
+            if (user instanceof User && ((User) user).getCredentialsVersion() != credentialsVersion)
+                return new SecurityContextImpl();
+            Authentication authentication = type == REMEMBER_ME
+                    ? new RememberMeAuthenticationToken(rememberMeKey, user, user.getAuthorities())
+                    : new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+            return new SecurityContextImpl(authentication);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte typeOf(Authentication authentication) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof User)
+                || ((User) authentication.getPrincipal()).getEmail() == null)
+            return JAVA;
+        if (authentication.getClass() == UsernamePasswordAuthenticationToken.class && authentication.isAuthenticated())
+            return FORM_LOGIN;
+        if (authentication.getClass() == RememberMeAuthenticationToken.class)
+            return REMEMBER_ME;
+        return JAVA;
+    }
+}
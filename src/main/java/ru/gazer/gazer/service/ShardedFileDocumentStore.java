@@ -0,0 +1,120 @@
+package ru.gazer.gazer.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Хранилище документов в файловой системе. Файл документа с идентификатором abcdef... хранится
+ * по пути ab/cd/abcdef....pdf, поэтому в одном каталоге оказывается не больше нескольких сотен файлов.
+ * Содержимое сначала записывается во временный каталог на том же диске и затем переносится на место
+ * атомарным переименованием, так что читатели никогда не видят недописанный файл.
+ */
+@Component
+@ConditionalOnProperty(name = "document.store.type", havingValue = "fs", matchIfMissing = true)
+public class ShardedFileDocumentStore implements DocumentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedFileDocumentStore.class);
+
+    /** Корневой каталог хранилища */
+    private final Path root;
+
+    /** Каталог для временных файлов */
+    private final Path tempDir;
+
+    public ShardedFileDocumentStore(@Value("${document.store.path}") String path) throws IOException {
+        this.root = Paths.get(path);
+        this.tempDir = root.resolve("tmp");
+        Files.createDirectories(tempDir);
+    }
+
+    @Override
+    public StagedDocument stage(InputStream content) throws IOException {
+        MessageDigest digest = sha256();
+        Path tempFile = Files.createTempFile(tempDir, "upload", ".tmp");
+        try {
+            long size = Files.copy(new DigestInputStream(content, digest), tempFile, StandardCopyOption.REPLACE_EXISTING);
+            return new StagedDocument(toHex(digest.digest()), size, tempFile);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    @Override
+    public void commit(StagedDocument document) throws IOException {
+        Path target = resolve(document.getDocumentId());
+        if (Files.exists(target)) {
+            Files.deleteIfExists(document.getTempFile());
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        Files.move(document.getTempFile(), target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void discard(StagedDocument document) {
+        try {
+            Files.deleteIfExists(document.getTempFile());
+        } catch (IOException e) {
+            log.warn("Не удалось удалить временный файл {}", document.getTempFile(), e);
+        }
+    }
+
+    @Override
+    public Path resolve(String documentId) {
+        if (!isDocumentId(documentId))
+            throw new IllegalArgumentException("Некорректный идентификатор документа: " + documentId);
+        return root.resolve(documentId.substring(0, 2))
+                .resolve(documentId.substring(2, 4))
+                .resolve(documentId + ".pdf");
+    }
+
+    @Override
+    public void delete(String documentId) throws IOException {
+        Files.deleteIfExists(resolve(documentId));
+    }
+
+    /**
+     * Метод проверяет, что строка является SHA-256 в шестнадцатеричном виде
+     */
+    static boolean isDocumentId(String documentId) {
+        if (documentId == null || documentId.length() != 64)
+            return false;
+        for (int i = 0; i < documentId.length(); i++) {
+            char c = documentId.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f'))
+                return false;
+        }
+        return true;
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package ru.gazer.gazer.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.gazer.gazer.models.ClientSnapshot;
+import ru.gazer.gazer.models.ClientView;
+import ru.gazer.gazer.repos.ClientRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Копия общих клиентов (userId = 0) в памяти приложения. Общие клиенты видны всем пользователям,
+ * поэтому без копии каждый запрос страницы или поиска повторно читал бы их из базы данных.
+ * Копия неизменяема и целиком заменяется при периодическом обновлении, поэтому чтение не требует блокировок.
+ * Приложение само не создает общих клиентов, они добавляются в базу данных напрямую (см. data.sql).
+ */
+@Component
+public class SharedClients {
+
+    /** Идентификатор владельца общих клиентов */
+    public static final Integer SHARED_USER_ID = 0;
+
+    /** Интерфейс, обеспечивающий взаимодействие с базой данных */
+    @Autowired
+    private ClientRepository clientRepository;
+
+    /** Текущая копия. До первого обновления равна null */
+    private volatile Snapshot snapshot;
+
+    /** Номер версии копии. Увеличивается, только если состав общих клиентов изменился */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Метод заново читает общих клиентов из базы данных и заменяет копию
+     */
+    @Scheduled(fixedDelayString = "${clients.shared.refresh-interval-ms}")
+    public void refresh() {
+        replace(clientRepository.findAllByUserIdOrderByClientId(SHARED_USER_ID));
+    }
+
+    /**
+     * Метод заменяет копию переданными записями. Если записи не изменились, то копия и ее версия остаются прежними
+     */
+    void replace(Collection<? extends ClientView> clients) {
+        Snapshot updated = new Snapshot(clients);
+        Snapshot current = snapshot;
+        if (current != null && current.clients.equals(updated.clients))
+            return;
+        snapshot = updated;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Метод возвращает номер версии копии. Результаты, вычисленные по копии одной версии, не устаревают,
+     * пока версия не изменится
+     */
+    public long getVersion() {
+        snapshot();
+        return version.get();
+    }
+
+    /**
+     * Метод возвращает контрольную сумму копии. В отличие от номера версии, она зависит только от состава
+     * общих клиентов, поэтому совпадает на всех узлах, прочитавших одних и тех же клиентов
+     */
+    public int getChecksum() {
+        return snapshot().checksum;
+    }
+
+    /**
+     * Метод возвращает всех общих клиентов, упорядоченных по clientId
+     */
+    public List<ClientSnapshot> all() {
+        return snapshot().clients;
+    }
+
+    /**
+     * Метод возвращает не больше limit общих клиентов с clientId больше заданного, по возрастанию clientId
+     */
+    public List<ClientSnapshot> after(Integer clientId, int limit) {
+        Snapshot current = snapshot();
+        int from = current.countBefore(clientId + 1);
+        return current.clients.subList(from, Math.min(current.clients.size(), from + limit));
+    }
+
+    /**
+     * Метод возвращает не больше limit общих клиентов с clientId меньше заданного, по убыванию clientId
+     */
+    public List<ClientSnapshot> before(Integer clientId, int limit) {
+        Snapshot current = snapshot();
+        int to = current.countBefore(clientId);
+        List<ClientSnapshot> result = new ArrayList<>(current.clients.subList(Math.max(0, to - limit), to));
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Метод возвращает количество общих клиентов с clientId меньше заданного
+     */
+    public int countBefore(Integer clientId) {
+        return snapshot().countBefore(clientId);
+    }
+
+    /**
+     * Метод возвращает общего клиента с заданным clientId
+     */
+    public Optional<ClientSnapshot> get(Integer clientId) {
+        return Optional.ofNullable(snapshot().byId.get(clientId));
+    }
+
+    /**
+     * Метод возвращает общего клиента с заданными паспортными данными
+     */
+    public Optional<ClientSnapshot> findByPassport(String passportSeries, String passportNumber) {
+        return Optional.ofNullable(snapshot().byPassport.get(passportKey(passportSeries, passportNumber)));
+    }
+
+    /**
+     * Метод возвращает ключ паспортных данных. Серия и номер не склеиваются в одну строку,
+     * чтобы серия 11112 с номером 22222 не совпадала с серией 1111 и номером 222222
+     */
+    public static List<String> passportKey(String passportSeries, String passportNumber) {
+        return Arrays.asList(passportSeries, passportNumber);
+    }
+
+    /**
+     * Метод возвращает общих клиентов с заданными именем и фамилией
+     */
+    public List<ClientSnapshot> findByName(String firstName, String lastName) {
+        List<ClientSnapshot> result = new ArrayList<>();
+        for (ClientSnapshot client : snapshot().clients)
+            if (client.getFirstName().equals(firstName) && client.getLastName().equals(lastName))
+                result.add(client);
+        return result;
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            refresh();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    /**
+     * Неизменяемый набор общих клиентов
+     */
+    private static final class Snapshot {
+
+        /** Клиенты по возрастанию clientId */
+        private final List<ClientSnapshot> clients;
+
+        /** Идентификаторы клиентов по возрастанию, для двоичного поиска */
+        private final int[] ids;
+
+        private final Map<Integer, ClientSnapshot> byId = new HashMap<>();
+
+        /** Клиенты по серии и номеру паспорта */
+        private final Map<List<String>, ClientSnapshot> byPassport = new HashMap<>();
+
+        /** Контрольная сумма клиентов */
+        private final int checksum;
+
+        private Snapshot(Collection<? extends ClientView> views) {
+            List<ClientSnapshot> sorted = new ArrayList<>(views.size());
+            for (ClientView view : views)
+                sorted.add(ClientSnapshot.of(view));
+            sorted.sort((a, b) -> a.getClientId().compareTo(b.getClientId()));
+            clients = Collections.unmodifiableList(sorted);
+            checksum = clients.hashCode();
+            ids = new int[sorted.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ClientSnapshot client = sorted.get(i);
+                ids[i] = client.getClientId();
+                byId.put(client.getClientId(), client);
+                byPassport.put(passportKey(client.getPassportSeries(), client.getPassportNumber()), client);
+            }
+        }
+
+        private int countBefore(int clientId) {
+            int position = Arrays.binarySearch(ids, clientId);
+            return position >= 0 ? position : -position - 1;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ru.gazer.gazer.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.nio.file.Path;
+
+/**
+ * Документ, записанный во временное место хранилища, но еще не ставший доступным по идентификатору
+ */
+@Getter
+@RequiredArgsConstructor
+public class StagedDocument {
+
+    /** SHA-256 содержимого в шестнадцатеричном виде */
+    private final String documentId;
+
+    /** Размер содержимого в байтах */
+    private final long size;
+
+    /** Временный файл с содержимым */
+    private final Path tempFile;
+}
@@ -0,0 +1,20 @@
+package ru.gazer.gazer.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.nio.file.Path;
+
+/**
+ * Файл документа клиента, найденный для отдачи
+ */
+@Getter
+@RequiredArgsConstructor
+public class StoredDocument {
+
+    /** Файл с содержимым */
+    private final Path file;
+
+    /** SHA-256 содержимого в шестнадцатеричном виде или null для файла, сохраненного до появления хранилища */
+    private final String documentId;
+}
@@ -0,0 +1,80 @@
+package ru.gazer.gazer.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.gazer.gazer.models.User;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Кеш пользователей по email перед запросом findUserByEmail. Используется при входе по форме,
+ * по cookie remember-me и при чтении сессий. Кеш у каждого узла свой, поэтому каждое попадание
+ * сверяется с версией учетных данных в базе данных (см. User.credentialsVersion): если пользователь
+ * удален или сменил email или пароль на любом узле, запись удаляется из кеша. Проверка выполняет
+ * один запрос по индексу unique_email вместо загрузки сущности с ролью.
+ * Количество попаданий и промахов публикуется в метриках cache.* с тегом cache=users.details.
+ */
+@Component
+public class UserDetailsCache {
+
+    /** Пользователи по email */
+    private final Cache<String, User> cache;
+
+    /** Количество удалений из кеша. Пользователь, загруженный во время удаления, в кеш не помещается */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public UserDetailsCache(@Value("${users.details-cache.maximum-size}") long maximumSize,
+                            @Value("${users.details-cache.ttl}") Duration ttl,
+                            MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "users.details");
+    }
+
+    /**
+     * Метод возвращает пользователя с email из кеша, если его версия учетных данных совпадает с версией,
+     * которую возвращает функция version (null, если пользователь удален). Иначе запись удаляется,
+     * а пользователь загружается функцией loader вне блокировки внутри кеша, чтобы поток не удерживал
+     * монитор во время запроса к базе данных. Если пользователь не найден, то возвращается null
+     * и в кеш ничего не помещается
+     */
+    public User get(String email, Function<String, User> loader, Function<String, Long> version) {
+        if (email == null)
+            return null;
+        User cached = cache.getIfPresent(email);
+        if (cached != null) {
+            Long current = version.apply(email);
+            if (current == null) {
+                invalidate(email);
+                return null;
+            }
+            if (current == cached.getCredentialsVersion())
+                return cached;
+            invalidate(email);
+        }
+        long generation = invalidations.get();
+        User loaded = loader.apply(email);
+        if (loaded != null && invalidations.get() == generation)
+            cache.asMap().putIfAbsent(email, loaded);
+        return loaded;
+    }
+
+    /**
+     * Метод удаляет пользователя с email из кеша
+     */
+    public void invalidate(String email) {
+        if (email != null) {
+            invalidations.incrementAndGet();
+            cache.invalidate(email);
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package ru.gazer.gazer.service;
+import io.micrometer.core.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import ru.gazer.gazer.models.Role;
+import ru.gazer.gazer.models.UserDataVersion;
+import ru.gazer.gazer.repos.UserDataVersionRepository;
 import ru.gazer.gazer.repos.UserReposiroty;
 import ru.gazer.gazer.models.User;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,26 +19,40 @@ import org.springframework.stereotype.Service;
  * Класс реализует бизнес логику взаимодействия с таблицей users базы данных
  */
 @Service
-public class UserService implements UserDetailsService {
+public class UserService implements UserDetailsService, UserDetailsPasswordService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserService.class);
 
     /** Интерфейс, обеспечивающий взаимодействие с базой данных */
     @Autowired
     private UserReposiroty userRepository;
-    /** Экземпляр BCryptPasswordEncoder для кодирования пароля */
+    /** Экземпляр PasswordEncoder для кодирования пароля */
+    @Autowired
+    PasswordEncoder encoder;
+    /** Кеш пользователей для входа по форме и по cookie remember-me */
+    @Autowired
+    UserDetailsCache userDetailsCache;
+    /** Интерфейс для взаимодействия с таблицей user_data_versions */
     @Autowired
-    BCryptPasswordEncoder encoder;
+    UserDataVersionRepository userDataVersionRepository;
 
     /**
-     * Метод выполняет сохранения объекта User в базу данных, выдавая ему роль USER
+     * Метод выполняет сохранения объекта User в базу данных, выдавая ему роль USER, и создает запись
+     * о версии его клиентов (см. ClientResultCache). Если пользователь не сохранен, то возвращается false.
+     * Если очередь хеширования паролей переполнена, то исключение AuthenticationServiceException
+     * передается вызывающему: пользователь не сохранен, но его почта не занята
      */
+    @Timed(value = "users.service", histogram = true)
     public boolean saveUser(User user) {
+        user.setPassword(encoder.encode(user.getPassword()));
         try {
-            user.setPassword(encoder.encode(user.getPassword()));
             user.setRole(new Role(1, "USER"));
             userRepository.save(user);
+            userDataVersionRepository.save(new UserDataVersion(user.getId()));
+            userDetailsCache.invalidate(user.getEmail());
             return true;
         } catch (Exception e) {
-            System.out.println(e);
+            log.error("Не удалось сохранить пользователя {}", user.getEmail(), e);
             return false;
         }
     }
@@ -42,6 +62,7 @@ public class UserService implements UserDetailsService {
      * полученного пароля и пароля в записи. Если пароли совпали, возвращается true,
      * иначе, false
      */
+    @Timed(value = "users.service", histogram = true)
     public boolean checkUserPassword(String email, String password) {
         User user = userRepository.findUserByEmail(email);
         String pass = user.getPassword();
@@ -52,35 +73,58 @@ public class UserService implements UserDetailsService {
     }
 
     /**
-     * Метод обновляет значения полей для записи user в таблице users
+     * Метод обновляет значения полей для записи user в таблице users и увеличивает версию учетных данных,
+     * поэтому старый пароль, сессии и cookie remember-me пользователя перестают действовать на всех узлах
      */
+    @Timed(value = "users.service", histogram = true)
     public void updateAccount(User user, User updatedUser) {
+        userDetailsCache.invalidate(user.getEmail());
         user.setUsername(updatedUser.getUsername());
         user.setEmail(updatedUser.getEmail());
         user.setPassword(encoder.encode(updatedUser.getPassword()));
         userRepository.save(user);
+        userRepository.incrementCredentialsVersion(user.getId());
+        userDetailsCache.invalidate(user.getEmail());
     }
 
     /**
      * Метод удаляет запись для user из таблицы users
      */
+    @Timed(value = "users.service", histogram = true)
     public void deleteUser(User user) {
         userRepository.delete(user);
+        userDetailsCache.invalidate(user.getEmail());
     }
 
     /**
      * Метод необходим для реализации интерфейса UserDetailsService. Метод получает из базы данных запись
      * с искомым значением email и возвращает в виде объекта, реализующего интерфейс UserDetails.
+     * Запись берется из UserDetailsCache, если она там есть и ее версия учетных данных совпадает
+     * с версией в базе данных.
      */
     @Override
+    @Timed(value = "users.service", histogram = true)
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        User user = userRepository.findUserByEmail(email);
+        User user = userDetailsCache.get(email, userRepository::findUserByEmail,
+                userRepository::findCredentialsVersionByEmail);
         if (user == null) {
             throw new UsernameNotFoundException("User not found");
         }
         return user;
     }
 
-
-
+    /**
+     * Метод необходим для реализации интерфейса UserDetailsPasswordService. Вызывается Spring Security
+     * после успешного входа, если сложность хеша пароля меньше текущей (см. AdaptivePasswordEncoder),
+     * и сохраняет пересчитанный хеш newPassword.
+     */
+    @Override
+    @Timed(value = "users.service", histogram = true)
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        User user = (User) userDetails;
+        userRepository.updatePassword(user.getId(), newPassword);
+        user.setPassword(newPassword);
+        userDetailsCache.invalidate(user.getEmail());
+        return user;
+    }
 }
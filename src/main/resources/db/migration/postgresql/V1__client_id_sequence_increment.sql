@@ -0,0 +1,10 @@
+-- Client.clientId выделяется пачками по 50 (allocationSize), а существующая последовательность
+-- создана с шагом 1, и Hibernate со стратегией fix уменьшал размер пачки до 1. На новой базе
+-- последовательности еще нет: ее создаст Hibernate с шагом 50
+DO $$
+BEGIN
+    IF to_regclass('client_id_sequence') IS NOT NULL THEN
+        ALTER SEQUENCE client_id_sequence INCREMENT BY 50;
+    END IF;
+END
+$$;
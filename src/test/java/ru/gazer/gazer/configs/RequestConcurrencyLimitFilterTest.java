@@ -0,0 +1,65 @@
+package ru.gazer.gazer.configs;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/** Класс, предназначенный для тестирования методов класса RequestConcurrencyLimitFilter */
+public class RequestConcurrencyLimitFilterTest extends TestCase {
+
+    /**
+     * Тестирование ограничения. Пока единственное разрешение занято запросом, следующий запрос
+     * получает ответ 503, а после завершения первого запроса снова обрабатывается
+     */
+    @Test
+    public void testRejectsRequestsOverLimit() throws Exception {
+        RequestConcurrencyLimitFilter filter = new RequestConcurrencyLimitFilter(1, 0);
+        MockHttpServletResponse nested = new MockHttpServletResponse();
+        filter.doFilter(request("/clients"), new MockHttpServletResponse(), new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                try {
+                    filter.doFilter(request("/clients"), nested, new MockFilterChain());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        assertEquals(503, nested.getStatus());
+        MockHttpServletResponse next = new MockHttpServletResponse();
+        filter.doFilter(request("/clients"), next, new MockFilterChain());
+        assertEquals(200, next.getStatus());
+    }
+
+    /**
+     * Тестирование путей, передающих файлы. Скачивание документа обрабатывается,
+     * даже если все разрешения заняты
+     */
+    @Test
+    public void testStreamingPathsAreNotLimited() throws Exception {
+        RequestConcurrencyLimitFilter filter = new RequestConcurrencyLimitFilter(1, 0);
+        MockHttpServletResponse nested = new MockHttpServletResponse();
+        filter.doFilter(request("/clients"), new MockHttpServletResponse(), new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                try {
+                    filter.doFilter(request("/download"), nested, new MockFilterChain());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        assertEquals(200, nested.getStatus());
+    }
+
+    private static MockHttpServletRequest request(String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(path);
+        return request;
+    }
+}
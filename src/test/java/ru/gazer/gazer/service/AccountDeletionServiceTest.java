@@ -0,0 +1,142 @@
+package ru.gazer.gazer.service;
+
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.gazer.gazer.models.AccountDeletion;
+import ru.gazer.gazer.models.User;
+import ru.gazer.gazer.repos.AccountDeletionRepository;
+
+/** Класс, предназначенный для тестирования методов класса AccountDeletionService */
+@RunWith(MockitoJUnitRunner.class)
+public class AccountDeletionServiceTest extends TestCase {
+
+    /** Имитация интерфейса AccountDeletionRepository */
+    @Mock
+    private AccountDeletionRepository accountDeletionRepository;
+
+    /** Имитация UserService */
+    @Mock
+    private UserService userService;
+
+    /** Имитация ClientService */
+    @Mock
+    private ClientService clientService;
+
+    /** Имитация DocumentService */
+    @Mock
+    private DocumentService documentService;
+
+    /** Имитация шаблона транзакций, выполняющая код сразу */
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    /** Экземпляр AccountDeletionService */
+    @InjectMocks
+    AccountDeletionService accountDeletionService;
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(accountDeletionService, "chunkSize", 2);
+        ReflectionTestUtils.setField(accountDeletionService, "leaseMillis", 60000L);
+        accountDeletionService.init();
+        Mockito.lenient().when(transactionTemplate.execute(Mockito.any()))
+                .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        accountDeletionService.shutdown();
+    }
+
+    /**
+     * Тестирование метода deleteAccount(). Пользователь удаляется сразу вместе с созданием задания,
+     * а его клиенты убираются из индексов поиска. Само удаление клиентов выполняется в фоновом потоке
+     */
+    @Test
+    public void testDeleteAccount() {
+        User user = new User();
+        user.setId(7);
+        accountDeletionService.deleteAccount(user);
+        Mockito.verify(accountDeletionRepository).save(Mockito.any(AccountDeletion.class));
+        Mockito.verify(userService).deleteUser(user);
+        Mockito.verify(clientService, Mockito.atLeastOnce()).forgetUserClients(7);
+    }
+
+    /**
+     * Тестирование метода process(). Клиенты удаляются пачками, пока они не закончатся, и только после этого
+     * задание удаляется. Перед началом удаляются документы без ссылок, оставшиеся после сбоя
+     */
+    @Test
+    public void testProcessDeletesInChunks() {
+        claim(1);
+        Mockito.when(accountDeletionRepository.addDeletedClients(Mockito.eq(7), Mockito.anyLong(), Mockito.anyString(), Mockito.any()))
+                .thenReturn(1);
+        Mockito.when(clientService.deleteUserClientsChunk(7, 2)).thenReturn(2, 2, 1, 0);
+        accountDeletionService.process(7);
+        InOrder order = Mockito.inOrder(documentService, clientService, accountDeletionRepository);
+        order.verify(documentService).purgeUnreferenced();
+        order.verify(clientService, Mockito.times(4)).deleteUserClientsChunk(7, 2);
+        order.verify(accountDeletionRepository).deleteClaimed(Mockito.eq(7), Mockito.anyString());
+        Mockito.verify(accountDeletionRepository, Mockito.times(2))
+                .addDeletedClients(Mockito.eq(7), Mockito.eq(2L), Mockito.anyString(), Mockito.any());
+        Mockito.verify(accountDeletionRepository)
+                .addDeletedClients(Mockito.eq(7), Mockito.eq(1L), Mockito.anyString(), Mockito.any());
+    }
+
+    /**
+     * Если задание закреплено за другим узлом, то клиенты не удаляются
+     */
+    @Test
+    public void testProcessSkipsJobClaimedByAnotherNode() {
+        claim(0);
+        accountDeletionService.process(7);
+        Mockito.verify(clientService, Mockito.never()).deleteUserClientsChunk(Mockito.anyInt(), Mockito.anyInt());
+        Mockito.verify(accountDeletionRepository, Mockito.never()).deleteClaimed(Mockito.anyInt(), Mockito.anyString());
+    }
+
+    /**
+     * Если другой узел забрал задание во время удаления, то удаление останавливается, а задание не удаляется
+     */
+    @Test
+    public void testProcessStopsWhenClaimIsLost() {
+        claim(1);
+        Mockito.when(accountDeletionRepository.addDeletedClients(Mockito.eq(7), Mockito.anyLong(), Mockito.anyString(), Mockito.any()))
+                .thenReturn(0);
+        Mockito.when(clientService.deleteUserClientsChunk(7, 2)).thenReturn(2);
+        accountDeletionService.process(7);
+        Mockito.verify(clientService, Mockito.times(1)).deleteUserClientsChunk(7, 2);
+        Mockito.verify(accountDeletionRepository, Mockito.never()).deleteClaimed(Mockito.anyInt(), Mockito.anyString());
+    }
+
+    /**
+     * Если удаление прервано ошибкой, то задание остается в таблице и будет продолжено
+     */
+    @Test
+    public void testProcessKeepsJobOnFailure() {
+        claim(1);
+        Mockito.when(accountDeletionRepository.addDeletedClients(Mockito.eq(7), Mockito.anyLong(), Mockito.anyString(), Mockito.any()))
+                .thenReturn(1);
+        Mockito.when(clientService.deleteUserClientsChunk(7, 2)).thenReturn(2).thenThrow(new IllegalStateException("db"));
+        accountDeletionService.process(7);
+        Mockito.verify(accountDeletionRepository, Mockito.never()).deleteClaimed(Mockito.anyInt(), Mockito.anyString());
+    }
+
+    /**
+     * Метод задает результат закрепления задания пользователя 7 за узлом: 1 - закреплено, 0 - выполняется другим узлом
+     */
+    private void claim(int result) {
+        Mockito.when(accountDeletionRepository.claim(Mockito.eq(7), Mockito.anyString(), Mockito.any(), Mockito.any()))
+                .thenReturn(result);
+    }
+}
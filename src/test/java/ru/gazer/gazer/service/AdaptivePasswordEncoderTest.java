@@ -0,0 +1,97 @@
+package ru.gazer.gazer.service;
+
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+/** Класс, предназначенный для тестирования методов класса AdaptivePasswordEncoder */
+public class AdaptivePasswordEncoderTest extends TestCase {
+
+    /** Экземпляр кодировщика с одним потоком и очередью на одно задание */
+    AdaptivePasswordEncoder encoder = new AdaptivePasswordEncoder(1, 5000, Duration.ofMillis(2500), 4);
+
+    @After
+    public void tearDown() {
+        encoder.shutdown();
+    }
+
+    /**
+     * Тестирование методов encode() и matches(). Хеш, полученный в пуле потоков, должен совпадать с паролем,
+     * а хеш с другой сложностью должен проверяться без пересчета
+     */
+    @Test
+    public void testEncodeAndMatches() {
+        String hash = encoder.encode("password");
+        assertTrue(hash.startsWith("$2a$04$"));
+        assertTrue(encoder.matches("password", hash));
+        assertFalse(encoder.matches("wrong", hash));
+        assertTrue(encoder.matches("password", new BCryptPasswordEncoder(5).encode("password")));
+    }
+
+    /**
+     * Тестирование метода calibrate(). Выбранная сложность не выходит за заданные границы
+     */
+    @Test
+    public void testCalibrate() {
+        assertEquals(4, encoder.calibrate(Duration.ZERO, 4, 6));
+        int strength = encoder.calibrate(Duration.ofSeconds(10), 4, 6);
+        assertEquals(6, strength);
+        assertEquals(6, encoder.getStrength());
+        assertTrue(encoder.encode("password").startsWith("$2a$06$"));
+    }
+
+    /**
+     * Тестирование метода upgradeEncoding(). Пересчитать нужно только хеши, сложность которых меньше текущей
+     */
+    @Test
+    public void testUpgradeEncoding() {
+        encoder.calibrate(Duration.ZERO, 5, 5);
+        assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode("password")));
+        assertFalse(encoder.upgradeEncoding(new BCryptPasswordEncoder(5).encode("password")));
+        assertFalse(encoder.upgradeEncoding(new BCryptPasswordEncoder(6).encode("password")));
+        assertFalse(encoder.upgradeEncoding("plain"));
+        assertFalse(encoder.upgradeEncoding(null));
+    }
+
+    /**
+     * Тестирование метода queueCapacity(). Два потока при хешировании за 250 мс успевают выполнить 40 задач
+     * за 5 секунд, две из которых уже выполняются, поэтому в очереди помещается 38 задач
+     */
+    @Test
+    public void testQueueCapacity() {
+        assertEquals(38, AdaptivePasswordEncoder.queueCapacity(2, 5000, Duration.ofMillis(250)));
+        assertEquals(1, AdaptivePasswordEncoder.queueCapacity(2, 100, Duration.ofMillis(250)));
+    }
+
+    /**
+     * Тестирование отклонения хеширования при заполненной очереди
+     */
+    @Test
+    public void testRejectsWhenQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        encoder.getExecutor().execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+        encoder.getExecutor().execute(() -> { });
+        try {
+            encoder.encode("password");
+            fail();
+        } catch (AuthenticationServiceException e) {
+            assertTrue(e.getMessage().contains("переполнена"));
+        } finally {
+            release.countDown();
+        }
+    }
+}
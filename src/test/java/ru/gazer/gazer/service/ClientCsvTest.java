@@ -0,0 +1,43 @@
+package ru.gazer.gazer.service;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import ru.gazer.gazer.models.Client;
+
+/** Класс, предназначенный для тестирования методов класса ClientCsv */
+public class ClientCsvTest extends TestCase {
+
+    /**
+     * Тестирование метода parse(). Строка разбивается на значения с учетом кавычек и пробелов вокруг значений.
+     */
+    @Test
+    public void testParse() {
+        Client client = ClientCsv.parse("Test, \"Client, Jr.\",Male,30,1111,222222,88005553535");
+        assertEquals("Test", client.getFirstName());
+        assertEquals("Client, Jr.", client.getLastName());
+        assertEquals("88005553535", client.getPhone());
+    }
+
+    /**
+     * Тестирование метода parse() для строки с неверным количеством столбцов.
+     */
+    @Test
+    public void testParseWrongColumnCount() {
+        try {
+            ClientCsv.parse("Test,Client,Male");
+            fail("Ожидалось исключение IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // ожидаемое исключение
+        }
+    }
+
+    /**
+     * Тестирование метода format(). Строка, сформированная для клиента, должна разбираться обратно в те же значения.
+     */
+    @Test
+    public void testFormatRoundTrip() {
+        Client client = ClientCsv.parse("Test,\"Client \"\"Q\"\"\",Male,30,1111,222222,88005553535");
+        assertEquals("Test,\"Client \"\"Q\"\"\",Male,30,1111,222222,88005553535", ClientCsv.format(client));
+        assertTrue(ClientCsv.isHeader(ClientCsv.HEADER));
+    }
+}
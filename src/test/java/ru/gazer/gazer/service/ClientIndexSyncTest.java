@@ -0,0 +1,107 @@
+package ru.gazer.gazer.service;
+
+import junit.framework.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.gazer.gazer.models.ClientChange;
+import ru.gazer.gazer.models.ClientDocumentText;
+import ru.gazer.gazer.models.ClientSnapshot;
+import ru.gazer.gazer.repos.ClientChangeRepository;
+import ru.gazer.gazer.repos.ClientRepository;
+import ru.gazer.gazer.repos.DocumentTextRepository;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Класс, предназначенный для тестирования методов класса ClientIndexSync */
+@RunWith(MockitoJUnitRunner.class)
+public class ClientIndexSyncTest extends TestCase {
+
+    /** Имитация интерфейса ClientChangeRepository */
+    @Mock
+    private ClientChangeRepository clientChangeRepository;
+
+    /** Имитация интерфейса ClientRepository */
+    @Mock
+    private ClientRepository clientRepository;
+
+    /** Имитация интерфейса DocumentTextRepository */
+    @Mock
+    private DocumentTextRepository documentTextRepository;
+
+    /** Имитация индекса имен и фамилий */
+    @Mock
+    private ClientNameIndex clientNameIndex;
+
+    /** Имитация индекса поиска */
+    @Mock
+    private ClientSearchIndex clientSearchIndex;
+
+    /** Имитация кеша результатов выборки */
+    @Mock
+    private ClientResultCache clientResultCache;
+
+    /** Имитация шаблона транзакций, выполняющая код сразу */
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    /** Экземпляр ClientIndexSync */
+    @InjectMocks
+    ClientIndexSync clientIndexSync;
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(clientIndexSync, "overlapMillis", 60000L);
+        ReflectionTestUtils.setField(clientIndexSync, "retentionMillis", 600000L);
+        Mockito.lenient().when(transactionTemplate.execute(Mockito.any()))
+                .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+    }
+
+    /**
+     * Тестирование метода sync(). Клиент, сохраненный на другом узле, добавляется в оба индекса вместе с текстом
+     * документа, а клиент, удаленный на другом узле, убирается из индексов. Повторно выбранные отметки
+     * не применяются второй раз, а версия данных пользователя увеличивается после обновления индекса
+     */
+    @Test
+    public void testSyncAppliesChangesMadeByAnyNode() {
+        Mockito.when(clientChangeRepository.findAllByChangedAtAfter(Mockito.any()))
+                .thenReturn(Arrays.asList(change(1L, 5), change(2L, 6)));
+        ClientSnapshot saved = new ClientSnapshot(5, "Ivan", "Ivanov", "Male", "30", "1234", "567890", "89990000001", 1);
+        Mockito.when(clientRepository.findAllByClientIdIn(Arrays.asList(5, 6))).thenReturn(Collections.singletonList(saved));
+        Map<String, Object> text = new HashMap<>();
+        text.put("clientId", 5);
+        text.put("text", "lease agreement");
+        Mockito.when(documentTextRepository.findClientTexts(Collections.singleton(5))).thenReturn(Collections.singletonList(
+                new SpelAwareProxyProjectionFactory().createProjection(ClientDocumentText.class, text)));
+        clientIndexSync.sync();
+        clientIndexSync.sync();
+        Mockito.verify(clientSearchIndex, Mockito.times(1)).add(saved);
+        Mockito.verify(clientSearchIndex, Mockito.times(1)).addDocumentText(5, "lease agreement");
+        Mockito.verify(clientSearchIndex, Mockito.times(1)).remove(6);
+        Mockito.verify(clientNameIndex, Mockito.times(1)).add(5, 1, "Ivan", "Ivanov");
+        Mockito.verify(clientNameIndex, Mockito.times(1)).remove(6);
+        InOrder inOrder = Mockito.inOrder(clientSearchIndex, clientResultCache);
+        inOrder.verify(clientSearchIndex).remove(6);
+        inOrder.verify(clientResultCache).invalidate(1);
+        Mockito.verify(clientResultCache, Mockito.times(1)).invalidate(1);
+    }
+
+    private static ClientChange change(Long changeId, Integer clientId) {
+        ClientChange change = new ClientChange(clientId, 1, Instant.now());
+        change.setChangeId(changeId);
+        return change;
+    }
+}
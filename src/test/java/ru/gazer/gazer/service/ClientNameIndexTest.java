@@ -0,0 +1,96 @@
+package ru.gazer.gazer.service;
+
+import junit.framework.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+import ru.gazer.gazer.models.ClientSnapshot;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** Класс, предназначенный для тестирования методов класса ClientNameIndex */
+public class ClientNameIndexTest extends TestCase {
+
+    /** Экземпляр индекса имен и фамилий клиентов */
+    ClientNameIndex index = new ClientNameIndex();
+
+    /**
+     * Метод заполняет индекс клиентами двух пользователей и общими клиентами (userId = 0).
+     */
+    @Before
+    public void setUp() {
+        index.add(1, 0, "Test", "Client");
+        index.add(2, 1, "Ivan", "Ivanov");
+        index.add(3, 1, "Ivan", "Ivanovsky");
+        index.add(4, 1, "Petr", "Petrov");
+        index.add(5, 2, "Ivan", "Ivanov");
+    }
+
+    /**
+     * Тестирование поиска без учета регистра. Точное совпадение должно находиться раньше совпадения по префиксу.
+     */
+    @Test
+    public void testCaseInsensitiveSearch() {
+        List<Integer> result = index.search("IVAN", "ivanov", Arrays.asList(0, 1), 15);
+        assertEquals(Arrays.asList(2, 3), result);
+    }
+
+    /**
+     * Тестирование поиска по префиксу имени и фамилии. Совпадение по префиксу должно находиться
+     * раньше совпадения с опечаткой.
+     */
+    @Test
+    public void testPrefixSearch() {
+        List<Integer> result = index.search("Iv", "Ivanovs", Arrays.asList(0, 1), 15);
+        assertEquals(Arrays.asList(3, 2), result);
+    }
+
+    /**
+     * Тестирование поиска с опечатками в имени и фамилии.
+     */
+    @Test
+    public void testTypoTolerantSearch() {
+        List<Integer> result = index.search("Pter", "Petrof", Arrays.asList(0, 1), 15);
+        assertEquals(Arrays.asList(4), result);
+    }
+
+    /**
+     * Тестирование ограничения поиска клиентами пользователя и общими клиентами.
+     */
+    @Test
+    public void testOwnershipScoping() {
+        assertEquals(Arrays.asList(1), index.search("Test", "Client", Arrays.asList(0, 2), 15));
+        assertEquals(Arrays.asList(5), index.search("Ivan", "Ivanov", Arrays.asList(0, 2), 15));
+    }
+
+    /**
+     * Тестирование удаления клиента и всех клиентов пользователя из индекса.
+     */
+    @Test
+    public void testRemove() {
+        index.remove(2);
+        assertEquals(Arrays.asList(3), index.search("Ivan", "Ivanov", Arrays.asList(0, 1), 15));
+        index.removeUser(1);
+        assertTrue(index.search("Ivan", "Ivanov", Arrays.asList(0, 1), 15).isEmpty());
+    }
+
+    /**
+     * Тестирование перестроения индекса. Клиенты, добавленные и удаленные после начала перестроения,
+     * но не попавшие в выборку, должны сохраниться поверх нее.
+     */
+    @Test
+    public void testRebuildReplaysChanges() {
+        index.beginRebuild();
+        List<ClientSnapshot> snapshot = Arrays.asList(
+                new ClientSnapshot(2, "Ivan", "Ivanov", null, null, null, null, null, 1),
+                new ClientSnapshot(4, "Petr", "Petrov", null, null, null, null, null, 1));
+        index.add(6, 1, "Ivan", "Ivanovich");
+        index.remove(4);
+        index.rebuild(snapshot);
+        assertEquals(Arrays.asList(2, 6), index.search("Ivan", "Ivanov", Arrays.asList(0, 1), 15));
+        assertTrue(index.search("Petr", "Petrov", Arrays.asList(0, 1), 15).isEmpty());
+        index.add(7, 1, "Petr", "Petrov");
+        index.rebuild(snapshot);
+        assertEquals(Arrays.asList(4), index.search("Petr", "Petrov", Arrays.asList(0, 1), 15));
+    }
+}
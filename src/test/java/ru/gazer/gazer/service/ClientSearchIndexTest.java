@@ -0,0 +1,103 @@
+package ru.gazer.gazer.service;
+
+import junit.framework.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+import ru.gazer.gazer.models.ClientSnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Класс, предназначенный для тестирования методов класса ClientSearchIndex */
+public class ClientSearchIndexTest extends TestCase {
+
+    /** Экземпляр инвертированного индекса по полям клиентов */
+    ClientSearchIndex index = new ClientSearchIndex();
+
+    /**
+     * Метод заполняет индекс клиентами двух пользователей и общим клиентом (userId = 0).
+     */
+    @Before
+    public void setUp() {
+        index.add(new ClientSnapshot(1, "Test", "Client", "Male", "30", "1111", "222222", "88005553535", 0));
+        index.add(new ClientSnapshot(2, "Ivan", "Ivanov", "Male", "30", "1234", "567890", "89990000001", 1));
+        index.add(new ClientSnapshot(3, "Anna", "Ivanova", "Female", "25", "1234", "567891", "89990000002", 1));
+        index.add(new ClientSnapshot(4, "Ivan", "Ivanov", "Male", "41", "4321", "098765", "89990000003", 2));
+    }
+
+    /**
+     * Тестирование запроса из нескольких слов. Найдены должны быть только записи, содержащие все слова.
+     */
+    @Test
+    public void testMultiTermSearch() {
+        assertEquals(Arrays.asList(1, 2), ids(index.search("male 30", Arrays.asList(0, 1), 15)));
+        assertEquals(Arrays.asList(3), ids(index.search("Ivanova 1234", Arrays.asList(0, 1), 15)));
+    }
+
+    /**
+     * Тестирование запроса с указанием поля и поиска по префиксу.
+     */
+    @Test
+    public void testFieldAndPrefixSearch() {
+        assertEquals(Arrays.asList(2, 3), ids(index.search("last:ivanov*", Arrays.asList(0, 1), 15)));
+        assertEquals(Arrays.asList(3), ids(index.search("passport:1234567891", Arrays.asList(0, 1), 15)));
+        assertTrue(index.search("first:ivanov", Arrays.asList(0, 1), 15).isEmpty());
+    }
+
+    /**
+     * Тестирование поиска по тексту документов. Слово без указания поля должно находиться и в полях,
+     * и в тексте документа, слово с префиксом "text:" - только в тексте. Текст должен удаляться вместе с клиентом.
+     */
+    @Test
+    public void testDocumentTextSearch() {
+        index.addDocumentText(2, "Договор аренды квартиры, г. Москва");
+        index.addDocumentText(4, "Договор аренды");
+        assertEquals(Arrays.asList(2), ids(index.search("договор москва", Arrays.asList(0, 1), 15)));
+        assertEquals(Arrays.asList(2), ids(index.search("ivanov аренд*", Arrays.asList(0, 1), 15)));
+        assertTrue(index.search("text:ivanov", Arrays.asList(0, 1), 15).isEmpty());
+        index.remove(2);
+        assertTrue(index.search("договор", Arrays.asList(0, 1), 15).isEmpty());
+    }
+
+    /**
+     * Тестирование ограничения поиска клиентами пользователя и общими клиентами, а также удаления из индекса.
+     */
+    @Test
+    public void testOwnershipScopingAndRemove() {
+        assertEquals(Arrays.asList(4), ids(index.search("ivanov", Arrays.asList(0, 2), 15)));
+        index.removeUser(2);
+        assertTrue(index.search("ivanov", Arrays.asList(0, 2), 15).isEmpty());
+        index.remove(1);
+        assertTrue(index.search("88005553535", Arrays.asList(0, 1), 15).isEmpty());
+    }
+
+    /**
+     * Тестирование перестроения индекса. Изменения, сделанные после начала перестроения,
+     * в том числе текст документа нового клиента, должны повториться поверх выборки.
+     */
+    @Test
+    public void testRebuildReplaysChanges() {
+        index.beginRebuild();
+        List<ClientSnapshot> snapshot = Arrays.asList(
+                new ClientSnapshot(1, "Test", "Client", "Male", "30", "1111", "222222", "88005553535", 0),
+                new ClientSnapshot(2, "Ivan", "Ivanov", "Male", "30", "1234", "567890", "89990000001", 1));
+        index.add(new ClientSnapshot(5, "Oleg", "Olegov", "Male", "50", "5555", "555555", "89990000005", 1));
+        index.addDocumentText(5, "Договор займа");
+        index.remove(2);
+        index.rebuild(snapshot);
+        assertEquals(Arrays.asList(5), ids(index.search("займа", Arrays.asList(0, 1), 15)));
+        assertTrue(index.search("ivanov", Arrays.asList(0, 1), 15).isEmpty());
+        assertEquals(Arrays.asList(1), ids(index.search("client", Arrays.asList(0, 1), 15)));
+    }
+
+    /**
+     * Метод возвращает clientId найденных записей
+     */
+    private List<Integer> ids(List<ClientSnapshot> clients) {
+        List<Integer> ids = new ArrayList<>();
+        for (ClientSnapshot client : clients)
+            ids.add(client.getClientId());
+        return ids;
+    }
+}
@@ -4,18 +4,43 @@ import junit.framework.TestCase;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.web.multipart.MultipartFile;
 import ru.gazer.gazer.models.Client;
+import ru.gazer.gazer.models.ClientDocument;
+import ru.gazer.gazer.models.ClientSnapshot;
+import ru.gazer.gazer.models.ClientView;
+import ru.gazer.gazer.models.UserDataVersion;
 import ru.gazer.gazer.repos.ClientRepository;
+import ru.gazer.gazer.repos.UserDataVersionRepository;
 
+import java.io.ByteArrayInputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 /** Класс, предназначенный для тестирования методов класса ClientService */
 @RunWith(MockitoJUnitRunner.class)
@@ -25,20 +50,67 @@ public class ClientServiceTest extends TestCase {
     @Mock
     private ClientRepository clientRepository;
 
-    /** Экземпляр UserService. В него встраивается зависимость ClientRepository */
+    /** Имитация индекса имен и фамилий клиентов */
+    @Mock
+    private ClientNameIndex clientNameIndex;
+
+    /** Имитация инвертированного индекса по всем полям клиентов */
+    @Mock
+    private ClientSearchIndex clientSearchIndex;
+
+    /** Имитация синхронизации индексов поиска между узлами */
+    @Mock
+    private ClientIndexSync clientIndexSync;
+
+    /** Имитация сервиса документов клиентов */
+    @Mock
+    private DocumentService documentService;
+
+    /** Имитация конвейера извлечения текста документов */
+    @Mock
+    private DocumentPipeline documentPipeline;
+
+    /** Имитация шаблона транзакций */
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    /** Имитация таблицы user_data_versions. Версии хранятся в versions */
+    @Mock
+    private UserDataVersionRepository userDataVersionRepository;
+
+    /** Версии клиентов по userId, общие для всех экземпляров ClientResultCache в тесте */
+    Map<Integer, Long> versions = new HashMap<>();
+
+    /** Копия общих клиентов. Заполняется в setUp без обращения к базе данных */
+    @Spy
+    SharedClients sharedClients = new SharedClients();
+
+    /** Экземпляр UserService. В него встраиваются зависимости ClientRepository, индексы поиска, DocumentService и SharedClients */
     @InjectMocks
     ClientService clientService;
 
-    /** Экземпляр класса Client*/
+    /** Общий клиент (userId = 0) */
     Client client = new Client();
 
+    /** Проекция объекта client, которая хранится в копии общих клиентов */
+    ClientSnapshot clientView;
+
+    /** Клиент пользователя с userId = 1 */
+    Client ownClient = new Client();
+
+    /** Проекция объекта ownClient, которую возвращают методы выборки ClientRepository */
+    ClientSnapshot ownClientView;
+
     /** Имитация реализации интерфейса Slice */
     @Mock
-    Slice<Client> clients;
+    Slice<ClientSnapshot> clients;
 
     /** Экземпляр класса PageRequest */
     Pageable clientsPage = PageRequest.of(0, 15);
 
+    /** Экземпляр класса PageRequest с сортировкой по clientId, используемый при постраничном выводе */
+    Pageable sortedPage = PageRequest.of(0, 15, Sort.by("clientId"));
+
     /**
      * Метод инициализирует Mock объекты и объект Client.
      */
@@ -54,40 +126,196 @@ public class ClientServiceTest extends TestCase {
         client.setPassportNumber("222222");
         client.setUserId(0);
 
-        Mockito.when(clientRepository
-                .findClientByPassportSeriesAndPassportNumberAndUserIdIn(
-                        "1111", "222222", Arrays.asList(0, 0), clientsPage))
-                .thenReturn(clients);
-        Mockito.when(clientRepository.findAllByUserIdIn(Arrays.asList(0, 0), clientsPage))
-                .thenReturn(clients);
-        Mockito.when(clientRepository.findClientsByFirstNameAndLastNameAndUserIdIn(
-                "Test", "Client", Arrays.asList(0, 0), clientsPage))
+        ownClient.setClientId(2);
+        ownClient.setFirstName("Test");
+        ownClient.setLastName("Client");
+        ownClient.setPassportSeries("1111");
+        ownClient.setPassportNumber("333333");
+        ownClient.setUserId(1);
+
+        clientView = ClientSnapshot.of(client);
+        ownClientView = ClientSnapshot.of(ownClient);
+        sharedClients.replace(Arrays.asList(clientView));
+        Mockito.lenient().when(userDataVersionRepository.findVersion(Mockito.any()))
+                .thenAnswer(invocation -> Optional.ofNullable(versions.get(invocation.<Integer>getArgument(0))));
+        Mockito.lenient().when(userDataVersionRepository.increment(Mockito.any()))
+                .thenAnswer(invocation -> versions.computeIfPresent(invocation.getArgument(0), (id, version) -> version + 1) != null ? 1 : 0);
+        Mockito.lenient().when(userDataVersionRepository.saveAndFlush(Mockito.any())).thenAnswer(invocation -> {
+            UserDataVersion version = invocation.getArgument(0);
+            versions.putIfAbsent(version.getUserId(), version.getVersion());
+            return version;
+        });
+        ReflectionTestUtils.setField(clientService, "clientResultCache", newCache());
+
+        Mockito.when(clientRepository.findAllByUserId(Mockito.eq(1), Mockito.any(Pageable.class)))
                 .thenReturn(clients);
-        Mockito.when(clientRepository.findClientByPassportSeriesAndPassportNumberAndUserIdIn(
-                "1111", "222222", Arrays.asList(0, 0), clientsPage))
+        Mockito.when(clientRepository.findAllByUserIdAndClientIdGreaterThan(1, 0, sortedPage))
                 .thenReturn(clients);
-        Mockito.when(clients.getContent()).thenReturn(Arrays.asList(client));
+        Mockito.when(clientRepository.findClientByPassportSeriesAndPassportNumberAndUserId(
+                "1111", "222222", 1, clientsPage))
+                .thenReturn(new SliceImpl<>(new ArrayList<>(), clientsPage, false));
+        Mockito.when(clients.getContent()).thenReturn(Arrays.asList(ownClientView));
+        Mockito.when(clientNameIndex.isReady()).thenReturn(true);
+        Mockito.lenient().when(clientRepository.findClientsByFirstNameAndLastNameAndUserId(
+                Mockito.anyString(), Mockito.anyString(), Mockito.anyInt(), Mockito.any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(new ArrayList<>(), clientsPage, false));
+        Mockito.when(clientNameIndex.search("Test", "Client", Arrays.asList(0, 1), 16))
+                .thenReturn(Arrays.asList(2, 1));
+        Mockito.when(clientRepository.findAllByClientIdInAndUserId(Arrays.asList(2), 1))
+                .thenReturn(Arrays.asList(ownClientView));
 
     }
 
     /**
      * Тестирование метода isPassportUser(). Методу передаются серия и номера паспорта. Он проверяет,
      * есть ли уже в базе данных объект с такими паспортными данными. Если есть, то возвращается true,
-     * иначе false.
+     * иначе false. Копия общих клиентов в памяти не используется.
      */
     @Test
     public void testIsPassportUsed() {
-        boolean res = clientService.isPassportUsed("1111", "222222", 0);
+        Mockito.when(clientRepository.existsByPassportSeriesAndPassportNumberAndUserIdIn("1111", "222222", Arrays.asList(0, 1)))
+                .thenReturn(true);
+        boolean res = clientService.isPassportUsed("1111", "222222", 1);
         assertTrue(res);
+        Mockito.verify(sharedClients, Mockito.never()).findByPassport(Mockito.any(), Mockito.any());
+    }
+
+    /**
+     * Тестирование метода isPassportUsed() для паспортных данных, которые при склеивании серии и номера
+     * совпадают с данными общего клиента 1111 222222, но отличаются от них
+     */
+    @Test
+    public void testIsPassportUsedComparesSeriesAndNumberSeparately() {
+        assertFalse(clientService.isPassportUsed("11112", "22222", 1));
+        Mockito.verify(clientRepository).existsByPassportSeriesAndPassportNumberAndUserIdIn("11112", "22222", Arrays.asList(0, 1));
+    }
+
+    /**
+     * Тестирование метода saveClient(). Ссылка на документ сохраняется в той же транзакции, что и клиент,
+     * после его вставки, а временный файл документа удаляется
+     */
+    @Test
+    public void testSaveClientReferencesDocumentInClientTransaction() throws Exception {
+        Mockito.when(transactionTemplate.execute(Mockito.any()))
+                .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        StagedDocument staged = new StagedDocument("abc", 3, null);
+        Mockito.when(documentService.stage(Mockito.any())).thenReturn(staged);
+        Client newClient = new Client();
+        newClient.setPassportSeries("4444");
+        newClient.setPassportNumber("555555");
+        assertTrue(clientService.saveClient(newClient, new ByteArrayInputStream(new byte[3]), 1));
+        assertEquals("abc", newClient.getDocumentId());
+        InOrder inOrder = Mockito.inOrder(transactionTemplate, clientRepository, documentService);
+        inOrder.verify(transactionTemplate).execute(Mockito.any());
+        inOrder.verify(clientRepository).saveAndFlush(newClient);
+        inOrder.verify(documentService).reference(staged);
+        inOrder.verify(documentService).discard(staged);
+        Mockito.verify(documentPipeline).enqueue("abc");
+    }
+
+    /**
+     * Тестирование метода saveClient(), когда паспортные данные заняты. Транзакция с клиентом откатывается
+     * до ссылки на документ, поэтому счетчик ссылок не меняется
+     */
+    @Test
+    public void testSaveClientWithUsedPassportDoesNotReferenceDocument() throws Exception {
+        Mockito.when(transactionTemplate.execute(Mockito.any()))
+                .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        StagedDocument staged = new StagedDocument("abc", 3, null);
+        Mockito.when(documentService.stage(Mockito.any())).thenReturn(staged);
+        Mockito.when(clientRepository.saveAndFlush(Mockito.any())).thenThrow(violation("unique_user_passport"));
+        Client newClient = new Client();
+        newClient.setPassportSeries("1111");
+        newClient.setPassportNumber("333333");
+        assertFalse(clientService.saveClient(newClient, new ByteArrayInputStream(new byte[3]), 1));
+        Mockito.verify(documentService, Mockito.never()).reference(Mockito.any());
+        Mockito.verify(documentService).discard(staged);
+    }
+
+    /**
+     * Тестирование метода saveClients(), когда пачка нарушает другое ограничение. Исключение не выдается
+     * за занятые паспортные данные, а передается вызывающему
+     */
+    @Test
+    public void testSaveClientsRethrowsOtherViolations() {
+        Mockito.when(transactionTemplate.execute(Mockito.any()))
+                .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        Mockito.when(clientRepository.saveAll(Mockito.anyList())).thenThrow(violation("clients_pkey"));
+        Client newClient = new Client();
+        newClient.setPassportSeries("4444");
+        newClient.setPassportNumber("555555");
+        try {
+            clientService.saveClients(Collections.singletonList(newClient), 1);
+            fail();
+        } catch (DataIntegrityViolationException e) {
+            Mockito.verify(clientRepository, Mockito.never()).saveAndFlush(Mockito.any());
+        }
     }
 
     /**
      * Тестирование метода deleteClient(). На вход принимает ID клиента, который должен быть удален
-     * из базы данных.
+     * из базы данных, и id пользователя. Общий клиент пользователю не принадлежит и не удаляется.
      */
     @Test
     public void testDeleteClient() {
-        clientService.deleteClient(1);
+        Mockito.when(transactionTemplate.execute(Mockito.any()))
+                .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        assertFalse(clientService.deleteClient(1, 1));
+        Mockito.verify(clientRepository, Mockito.never()).deleteByClientIdInAndUserId(Mockito.any(), Mockito.any());
+        Mockito.verifyNoInteractions(documentService);
+    }
+
+    /**
+     * Тестирование метода deleteClients(). Выбранные клиенты пользователя удаляются одним запросом с проверкой
+     * владельца, а клиенты, которые не нашлись у пользователя, пропускаются. Документы удаляются после транзакции.
+     */
+    @Test
+    public void testDeleteClients() {
+        ownClient.setDocumentId("abc");
+        List<Integer> ids = Arrays.asList(1, 2, 2);
+        Mockito.when(transactionTemplate.execute(Mockito.any()))
+                .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        Mockito.when(clientRepository.findDocumentsByClientIdInAndUserId(new HashSet<>(ids), 1)).thenReturn(Arrays.asList(
+                new SpelAwareProxyProjectionFactory().createProjection(ClientDocument.class, ownClient)));
+        assertEquals(1, clientService.deleteClients(ids, 1));
+        Mockito.verify(clientRepository).deleteByClientIdInAndUserId(Arrays.asList(2), 1);
+        Mockito.verify(clientIndexSync).recordChanges(1, Arrays.asList(2));
+        Mockito.verify(documentService).decrementRefCounts(Collections.singletonMap("abc", 1));
+        Mockito.verify(documentService).purge(Collections.singleton("abc"));
+        Mockito.verify(clientNameIndex).remove(2);
+        Mockito.verify(clientSearchIndex).remove(2);
+    }
+
+    /**
+     * Тестирование метода deleteClients() для списка длиннее ClientService.MAX_DELETE_IDS.
+     * Запрос отклоняется без обращения к базе данных
+     */
+    @Test
+    public void testDeleteClientsRejectsTooManyIds() {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1; id <= ClientService.MAX_DELETE_IDS + 1; id++)
+            ids.add(id);
+        try {
+            clientService.deleteClients(ids, 1);
+            fail("Ожидалось исключение IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // ожидаемое исключение
+        }
+        Mockito.verifyNoInteractions(clientRepository);
+    }
+
+    /**
+     * Тестирование метода exceedsDeleteLimit(). Повторяющиеся id считаются один раз, как в deleteClients()
+     */
+    @Test
+    public void testExceedsDeleteLimitCountsDistinctIds() {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1; id <= ClientService.MAX_DELETE_IDS; id++)
+            ids.add(id);
+        ids.add(1);
+        assertFalse(ClientService.exceedsDeleteLimit(ids));
+        ids.add(ClientService.MAX_DELETE_IDS + 1);
+        assertTrue(ClientService.exceedsDeleteLimit(ids));
     }
 
     /**
@@ -97,8 +325,202 @@ public class ClientServiceTest extends TestCase {
      */
     @Test
     public void testGetClientsPage() {
-        Slice<Client> page = clientService.getClientsPage(0, 0);
-        assertTrue(page.getContent().size() > 0);
+        Slice<ClientView> page = clientService.getClientsPage(0, 1);
+        assertEquals(2, page.getContent().size());
+        assertEquals(Integer.valueOf(1), page.getContent().get(0).getClientId());
+        assertEquals(Integer.valueOf(2), page.getContent().get(1).getClientId());
+    }
+
+    /**
+     * Тестирование кеша результатов. Повторный запрос страницы не обращается к базе данных,
+     * а после удаления клиента пользователя страница снова читается из базы данных.
+     */
+    @Test
+    public void testGetClientsPageIsCachedUntilDelete() {
+        clientService.getClientsPage(0, 1);
+        clientService.getClientsPage(0, 1);
+        Mockito.verify(clientRepository, Mockito.times(1)).findAllByUserId(Mockito.eq(1), Mockito.any(Pageable.class));
+        Mockito.when(transactionTemplate.execute(Mockito.any()))
+                .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        Mockito.when(clientRepository.findDocumentsByClientIdInAndUserId(Collections.singleton(2), 1)).thenReturn(Arrays.asList(
+                new SpelAwareProxyProjectionFactory().createProjection(ClientDocument.class, ownClient)));
+        clientService.deleteClient(2, 1);
+        clientService.getClientsPage(0, 1);
+        Mockito.verify(clientRepository, Mockito.times(2)).findAllByUserId(Mockito.eq(1), Mockito.any(Pageable.class));
+    }
+
+    /**
+     * Тестирование ETag данных пользователя. ETag не меняется между выборками и меняется после удаления
+     * клиента пользователя, но не после попытки удалить общего клиента.
+     */
+    @Test
+    public void testEtagChangesOnlyWhenClientsChange() {
+        ClientResultCache cache = (ClientResultCache) ReflectionTestUtils.getField(clientService, "clientResultCache");
+        String etag = cache.etag(1);
+        assertTrue(etag.startsWith("W/\""));
+        clientService.getClientsPage(0, 1);
+        assertEquals(etag, cache.etag(1));
+        Mockito.when(transactionTemplate.execute(Mockito.any()))
+                .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        clientService.deleteClient(1, 1);
+        assertEquals(etag, cache.etag(1));
+        Mockito.when(clientRepository.findDocumentsByClientIdInAndUserId(Collections.singleton(2), 1)).thenReturn(Arrays.asList(
+                new SpelAwareProxyProjectionFactory().createProjection(ClientDocument.class, ownClient)));
+        clientService.deleteClient(2, 1);
+        assertFalse(etag.equals(cache.etag(1)));
+    }
+
+    /**
+     * Тестирование кеша результатов на двух узлах. Версия пользователя хранится в базе данных, поэтому
+     * удаление клиента на одном узле сбрасывает результаты и меняет ETag на другом узле
+     */
+    @Test
+    public void testInvalidateIsVisibleToOtherNodes() {
+        ClientResultCache otherNode = newCache();
+        Slice<ClientView> page = clientService.getClientsPage(0, 1);
+        String etag = otherNode.etag(1);
+        Slice<ClientView> cached = otherNode.get(1, () -> page, "page", 0);
+        assertSame(cached, otherNode.get(1, () -> page, "page", 0));
+        assertEquals(etag, ((ClientResultCache) ReflectionTestUtils.getField(clientService, "clientResultCache")).etag(1));
+        Mockito.when(transactionTemplate.execute(Mockito.any()))
+                .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        Mockito.when(clientRepository.findDocumentsByClientIdInAndUserId(Collections.singleton(2), 1)).thenReturn(Arrays.asList(
+                new SpelAwareProxyProjectionFactory().createProjection(ClientDocument.class, ownClient)));
+        clientService.deleteClient(2, 1);
+        assertEquals(Long.valueOf(2), versions.get(1));
+        assertFalse(etag.equals(otherNode.etag(1)));
+        Slice<ClientView> reloaded = new SliceImpl<>(Collections.<ClientView>singletonList(clientView));
+        assertEquals(reloaded.getContent(), otherNode.get(1, () -> reloaded, "page", 0).getContent());
+    }
+
+    /**
+     * Тестирование порядка увеличения версии при удалении клиента. Версия увеличивается в транзакции удаления
+     * и еще раз после изменения индексов поиска этого узла, поэтому результат поиска, вычисленный по индексу
+     * между фиксацией и изменением индекса, не остается в кеше под новой версией
+     */
+    @Test
+    public void testVersionIsBumpedAgainAfterIndexUpdate() {
+        Mockito.when(transactionTemplate.execute(Mockito.any()))
+                .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        Mockito.when(clientRepository.findDocumentsByClientIdInAndUserId(Collections.singleton(2), 1)).thenReturn(Arrays.asList(
+                new SpelAwareProxyProjectionFactory().createProjection(ClientDocument.class, ownClient)));
+        clientService.deleteClient(2, 1);
+        InOrder inOrder = Mockito.inOrder(clientRepository, userDataVersionRepository, clientNameIndex);
+        inOrder.verify(clientRepository).deleteByClientIdInAndUserId(Arrays.asList(2), 1);
+        inOrder.verify(userDataVersionRepository).increment(1);
+        inOrder.verify(clientNameIndex).remove(2);
+        inOrder.verify(userDataVersionRepository).increment(1);
+    }
+
+    /**
+     * Тестирование ETag на узлах, обновлявших копию общих клиентов разное количество раз.
+     * ETag совпадает, пока совпадают версия пользователя и состав общих клиентов
+     */
+    @Test
+    public void testEtagDoesNotDependOnNode() {
+        SharedClients otherShared = new SharedClients();
+        otherShared.replace(Collections.<ClientView>emptyList());
+        otherShared.replace(Arrays.asList(clientView));
+        assertFalse(sharedClients.getVersion() == otherShared.getVersion());
+        ClientResultCache otherNode = new ClientResultCache(100, 1000, new SimpleMeterRegistry(), otherShared,
+                userDataVersionRepository);
+        assertEquals(newCache().etag(1), otherNode.etag(1));
+        otherShared.replace(Collections.<ClientView>emptyList());
+        assertFalse(newCache().etag(1).equals(otherNode.etag(1)));
+    }
+
+    /**
+     * Тестирование метода deleteUserClientsChunk(). Клиенты пачки удаляются одним запросом, счетчики ссылок
+     * на документы уменьшаются на количество клиентов с этим документом, а файлы старых клиентов удаляются
+     */
+    @Test
+    public void testDeleteUserClientsChunk() {
+        Client legacy = new Client();
+        legacy.setClientId(3);
+        legacy.setUserId(1);
+        ownClient.setDocumentId("abc");
+        Client sameDocument = new Client();
+        sameDocument.setClientId(4);
+        sameDocument.setUserId(1);
+        sameDocument.setDocumentId("abc");
+        SpelAwareProxyProjectionFactory factory = new SpelAwareProxyProjectionFactory();
+        Mockito.when(clientRepository.findDocumentsByUserId(Mockito.eq(1), Mockito.any(Pageable.class))).thenReturn(Arrays.asList(
+                factory.createProjection(ClientDocument.class, ownClient),
+                factory.createProjection(ClientDocument.class, legacy),
+                factory.createProjection(ClientDocument.class, sameDocument)));
+        Mockito.when(clientRepository.deleteByClientIdIn(Arrays.asList(2, 3, 4))).thenReturn(3);
+        Mockito.when(transactionTemplate.execute(Mockito.any()))
+                .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        assertEquals(3, clientService.deleteUserClientsChunk(1, 500));
+        Mockito.verify(clientRepository).deleteByClientIdIn(Arrays.asList(2, 3, 4));
+        Mockito.verify(documentService).decrementRefCounts(Collections.singletonMap("abc", 2));
+        Mockito.verify(documentService).purge(Collections.singleton("abc"));
+        Mockito.verify(documentService).deleteLegacyDocuments(Arrays.asList(3));
+    }
+
+    /**
+     * Тестирование метода deleteUserClientsChunk(), когда часть выбранных клиентов уже удалена.
+     * Транзакция откатывается, и счетчики ссылок на документы не уменьшаются
+     */
+    @Test
+    public void testDeleteUserClientsChunkRollsBackPartialDelete() {
+        ownClient.setDocumentId("abc");
+        SpelAwareProxyProjectionFactory factory = new SpelAwareProxyProjectionFactory();
+        Mockito.when(clientRepository.findDocumentsByUserId(Mockito.eq(1), Mockito.any(Pageable.class)))
+                .thenReturn(Arrays.asList(factory.createProjection(ClientDocument.class, ownClient)));
+        Mockito.when(clientRepository.deleteByClientIdIn(Arrays.asList(2))).thenReturn(0);
+        Mockito.when(transactionTemplate.execute(Mockito.any()))
+                .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        try {
+            clientService.deleteUserClientsChunk(1, 500);
+            fail("Ожидалось исключение IllegalStateException");
+        } catch (IllegalStateException e) {
+            // ожидаемое исключение
+        }
+        Mockito.verify(documentService, Mockito.never()).decrementRefCounts(Mockito.anyMap());
+        Mockito.verify(documentService, Mockito.never()).purge(Mockito.anyCollection());
+    }
+
+    /**
+     * Тестирование слияния клиентов пользователя с общими клиентами на дальних страницах. Клиенты пользователя
+     * имеют clientId от 1 до 30, кроме 5, а общие клиенты - 5 и 40, поэтому вторая страница содержит
+     * clientId от 16 до 30, а третья - только 40.
+     */
+    @Test
+    public void testGetClientsPageMergesSharedClients() {
+        List<ClientSnapshot> own = new ArrayList<>();
+        for (int id = 1; id <= 30; id++)
+            if (id != 5)
+                own.add(view(id, 2));
+        sharedClients.replace(Arrays.asList(view(5, 0), view(40, 0)));
+        Mockito.when(clientRepository.findAllByUserId(Mockito.eq(2), Mockito.any(Pageable.class))).thenAnswer(invocation -> {
+            Pageable window = invocation.getArgument(1);
+            int from = (int) Math.min(own.size(), window.getOffset());
+            int to = Math.min(own.size(), from + window.getPageSize());
+            return new SliceImpl<>(own.subList(from, to), window, to < own.size());
+        });
+        Slice<ClientView> page = clientService.getClientsPage(1, 2);
+        assertEquals(15, page.getContent().size());
+        assertEquals(Integer.valueOf(16), page.getContent().get(0).getClientId());
+        assertEquals(Integer.valueOf(30), page.getContent().get(14).getClientId());
+        assertTrue(page.hasNext());
+        page = clientService.getClientsPage(2, 2);
+        assertEquals(1, page.getContent().size());
+        assertEquals(Integer.valueOf(40), page.getContent().get(0).getClientId());
+        assertFalse(page.hasNext());
+    }
+
+    /**
+     * Тестирование метода getClientsPageAfter(). Методу передаются номер страницы, clientId последней записи
+     * предыдущей страницы и id пользователя. Возвращается страница записей, следующих за курсором, при этом
+     * номер страницы сохраняется в возвращаемом объекте Slice.
+     */
+    @Test
+    public void testGetClientsPageAfter() {
+        Slice<ClientView> page = clientService.getClientsPageAfter(3, 0, 1);
+        assertEquals(2, page.getContent().size());
+        assertEquals(3, page.getNumber());
+        assertTrue(page.hasPrevious());
     }
 
     /**
@@ -108,8 +530,40 @@ public class ClientServiceTest extends TestCase {
      */
     @Test
     public void testGetByName() {
-        Slice<Client> page = clientService.getByName("Test", "Client", 0);
-        assertTrue(page.getContent().size() > 0);
+        Slice<ClientView> page = clientService.getByName("Test", "Client", 1);
+        assertEquals(2, page.getContent().size());
+        assertEquals(Integer.valueOf(2), page.getContent().get(0).getClientId());
+        assertEquals(Integer.valueOf(1), page.getContent().get(1).getClientId());
+    }
+
+    /**
+     * Тестирование метода search(). Клиент, найденный в индексе этого узла, но уже удаленный на другом узле,
+     * не возвращается, а данные клиента пользователя читаются из базы данных
+     */
+    @Test
+    public void testSearchChecksIndexAgainstDatabase() {
+        Mockito.when(clientSearchIndex.search("test", Arrays.asList(0, 1), 16)).thenReturn(Arrays.asList(
+                clientView, ownClientView, view(3, 1)));
+        Mockito.when(clientRepository.findAllByClientIdInAndUserId(Arrays.asList(2, 3), 1))
+                .thenReturn(Arrays.asList(ownClientView));
+        Slice<ClientView> page = clientService.search("test", 1);
+        assertEquals(2, page.getContent().size());
+        assertEquals(clientView.getClientId(), page.getContent().get(0).getClientId());
+        assertSame(ownClientView, page.getContent().get(1));
+    }
+
+    /**
+     * Тестирование метода getByName() для клиента, сохраненного на другом узле и еще не попавшего в индекс
+     * этого узла. Клиент с точно совпадающими именем и фамилией находится в базе данных
+     */
+    @Test
+    public void testGetByNameFindsClientsMissingFromIndex() {
+        ClientSnapshot created = view(7, 1);
+        Mockito.when(clientRepository.findClientsByFirstNameAndLastNameAndUserId("Client7", "Client7", 1, clientsPage))
+                .thenReturn(new SliceImpl<>(Arrays.asList(created), clientsPage, false));
+        Slice<ClientView> page = clientService.getByName("Client7", "Client7", 1);
+        assertEquals(1, page.getContent().size());
+        assertSame(created, page.getContent().get(0));
     }
 
     /**
@@ -119,7 +573,48 @@ public class ClientServiceTest extends TestCase {
      */
     @Test
     public void testGetByPassport() {
-        Slice<Client> page = clientService.getByPassport("1111", "222222", 0);
-        assertTrue(page.getContent().size() > 0);
+        Slice<ClientView> page = clientService.getByPassport("1111", "222222", 1);
+        assertEquals(1, page.getContent().size());
+        assertEquals(Integer.valueOf(0), page.getContent().get(0).getUserId());
+    }
+
+    /**
+     * Тестирование метода getClient(). Общий клиент и клиент пользователя возвращаются,
+     * клиент другого пользователя не возвращается
+     */
+    @Test
+    public void testGetClient() {
+        Mockito.when(clientRepository.findByClientIdAndUserId(2, 1)).thenReturn(Optional.of(ownClientView));
+        assertEquals(clientView, clientService.getClient(1, 1).get());
+        assertEquals(ownClientView, clientService.getClient(2, 1).get());
+        assertFalse(clientService.getClient(2, 3).isPresent());
+    }
+
+    /**
+     * Метод создает кеш результатов, читающий версии из имитации таблицы user_data_versions
+     */
+    private ClientResultCache newCache() {
+        return new ClientResultCache(100, 1000, new SimpleMeterRegistry(), sharedClients,
+                userDataVersionRepository);
+    }
+
+    /**
+     * Метод создает проекцию клиента с заданными clientId и userId
+     */
+
+    private static ClientSnapshot view(int clientId, int userId) {
+        Client client = new Client();
+        client.setClientId(clientId);
+        client.setFirstName("Client" + clientId);
+        client.setLastName("Client" + clientId);
+        client.setPassportSeries("1111");
+        client.setPassportNumber(String.valueOf(100000 + clientId));
+        client.setUserId(userId);
+        return ClientSnapshot.of(client);
+    }
+
+    private static DataIntegrityViolationException violation(String constraintName) {
+        return new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("could not execute statement", new SQLException(), constraintName));
     }
 }
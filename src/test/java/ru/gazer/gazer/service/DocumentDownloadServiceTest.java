@@ -0,0 +1,145 @@
+package ru.gazer.gazer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Semaphore;
+
+/** Класс, предназначенный для тестирования методов класса DocumentDownloadService */
+public class DocumentDownloadServiceTest extends TestCase {
+
+    /** Реестр метрик */
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    /** Экземпляр класса DocumentDownloadService */
+    DocumentDownloadService downloadService = new DocumentDownloadService(1, 100, meterRegistry);
+
+    /** Идентификатор документа */
+    String documentId = "ab" + String.join("", Collections.nCopies(62, "0"));
+
+    /** Временный файл документа */
+    Path file;
+
+    /** Содержимое временного файла */
+    byte[] content = new byte[100];
+
+    /**
+     * Метод создает временный файл документа размером 100 байт
+     */
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) i;
+        file = Files.createTempFile("document", ".pdf");
+        Files.write(file, content);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Тестирование отправки файла целиком.
+     */
+    @Test
+    public void testSendWholeFile() throws Exception {
+        MockHttpServletResponse response = send(new MockHttpServletRequest("GET", "/download"));
+        assertEquals(200, response.getStatus());
+        assertEquals(100, response.getContentLengthLong());
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertEquals("\"" + documentId + "\"", response.getHeader(HttpHeaders.ETAG));
+        assertTrue(Arrays.equals(content, response.getContentAsByteArray()));
+        assertEquals(100.0, meterRegistry.get("documents.download").counter().count());
+    }
+
+    /**
+     * Тестирование отправки диапазона байт.
+     */
+    @Test
+    public void testSendRange() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-19");
+        MockHttpServletResponse response = send(request);
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 10-19/100", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(content, 10, 20), response.getContentAsByteArray()));
+    }
+
+    /**
+     * Тестирование запроса диапазона за пределами файла.
+     */
+    @Test
+    public void testUnsatisfiableRange() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader(HttpHeaders.RANGE, "bytes=200-");
+        MockHttpServletResponse response = send(request);
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */100", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    /**
+     * Тестирование повторного запроса с ETag: файл не должен отправляться снова.
+     */
+    @Test
+    public void testNotModified() throws Exception {
+        String etag = send(new MockHttpServletRequest("GET", "/download")).getHeader(HttpHeaders.ETAG);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        MockHttpServletResponse response = send(request);
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    /**
+     * Тестирование передачи файла через sendfile контейнера.
+     */
+    @Test
+    public void testSendfile() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        request.addHeader(HttpHeaders.RANGE, "bytes=-10");
+        MockHttpServletResponse response = send(request);
+        assertEquals(206, response.getStatus());
+        assertEquals(90L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(100L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertEquals(0.0, meterRegistry.get("documents.download").counter().count());
+        assertEquals(10.0, meterRegistry.get("documents.download.sendfile").counter().count());
+    }
+
+    /**
+     * Тестирование ограничения открытых файлов при передаче через sendfile: если разрешений нет,
+     * отправляется ответ 503.
+     */
+    @Test
+    public void testSendfileWaitsForOpenFilePermit() throws Exception {
+        Semaphore openFiles = (Semaphore) ReflectionTestUtils.getField(downloadService, "openFiles");
+        openFiles.acquire();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        MockHttpServletResponse response = send(request);
+        assertEquals(503, response.getStatus());
+        assertNull(request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        openFiles.release();
+        assertEquals(200, send(request).getStatus());
+        assertEquals(1, openFiles.availablePermits());
+    }
+
+    private MockHttpServletResponse send(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        downloadService.send(new StoredDocument(file, documentId), "1.pdf", request, response);
+        return response;
+    }
+}
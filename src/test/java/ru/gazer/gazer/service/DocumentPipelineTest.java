@@ -0,0 +1,183 @@
+package ru.gazer.gazer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import junit.framework.TestCase;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.gazer.gazer.models.ClientDocument;
+import ru.gazer.gazer.models.DocumentJob;
+import ru.gazer.gazer.models.DocumentText;
+import ru.gazer.gazer.repos.ClientRepository;
+import ru.gazer.gazer.repos.DocumentJobRepository;
+import ru.gazer.gazer.repos.DocumentTextRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+/** Класс, предназначенный для тестирования методов класса DocumentPipeline */
+@RunWith(MockitoJUnitRunner.class)
+public class DocumentPipelineTest extends TestCase {
+
+    /** Временный PDF файл из двух страниц */
+    Path file;
+
+    /** Имитация интерфейса DocumentJobRepository */
+    @Mock
+    private DocumentJobRepository documentJobRepository;
+
+    /** Имитация интерфейса DocumentTextRepository */
+    @Mock
+    private DocumentTextRepository documentTextRepository;
+
+    /** Имитация интерфейса ClientRepository */
+    @Mock
+    private ClientRepository clientRepository;
+
+    /** Имитация хранилища документов */
+    @Mock
+    private DocumentStore documentStore;
+
+    /** Имитация индекса поиска */
+    @Mock
+    private ClientSearchIndex clientSearchIndex;
+
+    /** Имитация кеша результатов выборки */
+    @Mock
+    private ClientResultCache clientResultCache;
+
+    /** Имитация шаблона транзакций, выполняющая код сразу */
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    /** Экземпляр DocumentPipeline с одним рабочим потоком */
+    @InjectMocks
+    DocumentPipeline documentPipeline;
+
+    /**
+     * Метод создает PDF файл, на первой странице которого написан текст, и запускает обработку документов
+     */
+    @Before
+    public void setUp() throws Exception {
+        ReflectionTestUtils.setField(documentPipeline, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(documentPipeline, "workers", 1);
+        ReflectionTestUtils.setField(documentPipeline, "maxAttempts", 3);
+        ReflectionTestUtils.setField(documentPipeline, "leaseMillis", 60000L);
+        ReflectionTestUtils.setField(documentPipeline, "syncOverlapMillis", 60000L);
+        ReflectionTestUtils.setField(documentPipeline, "completedRetentionMillis", 600000L);
+        documentPipeline.init();
+        Mockito.lenient().when(transactionTemplate.execute(Mockito.any()))
+                .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        file = Files.createTempFile("document", ".pdf");
+        try (PDDocument pdf = new PDDocument()) {
+            PDPage page = new PDPage();
+            pdf.addPage(page);
+            pdf.addPage(new PDPage());
+            try (PDPageContentStream content = new PDPageContentStream(pdf, page)) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 12);
+                content.newLineAtOffset(50, 700);
+                content.showText("Rental agreement Moscow");
+                content.endText();
+            }
+            pdf.save(file.toFile());
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        documentPipeline.shutdown();
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Тестирование извлечения количества страниц и текста из PDF файла.
+     */
+    @Test
+    public void testExtract() throws Exception {
+        DocumentText text = DocumentPipeline.extract("id", file, 1000);
+        assertEquals(Integer.valueOf(2), text.getPageCount());
+        assertTrue(text.getText().contains("Rental agreement Moscow"));
+    }
+
+    /**
+     * Тестирование ограничения длины извлекаемого текста.
+     */
+    @Test
+    public void testExtractTruncatesText() throws Exception {
+        assertEquals(6, DocumentPipeline.extract("id", file, 6).getText().length());
+    }
+
+    /**
+     * Тестирование метода poll(). Задание, которое уже забрал другой узел, не обрабатывается,
+     * а неудачная попытка записывается условным обновлением, а не сохранением сущности
+     */
+    @Test
+    public void testPollProcessesOnlyClaimedJobs() {
+        DocumentJob taken = job(1L, "a");
+        DocumentJob free = job(2L, "b");
+        Mockito.when(documentJobRepository.findClaimable(Mockito.eq(DocumentJob.State.PENDING),
+                        Mockito.eq(DocumentJob.State.RUNNING), Mockito.any(Instant.class), Mockito.any(Pageable.class)))
+                .thenReturn(Arrays.asList(taken, free));
+        Mockito.when(documentJobRepository.claim(Mockito.eq(1L), Mockito.any(), Mockito.anyString(),
+                Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(0);
+        Mockito.when(documentJobRepository.claim(Mockito.eq(2L), Mockito.any(), Mockito.anyString(),
+                Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(1);
+        Mockito.when(documentTextRepository.findById("b")).thenThrow(new IllegalStateException("database is down"));
+        documentPipeline.poll();
+        Mockito.verify(documentJobRepository, Mockito.timeout(5000))
+                .fail(Mockito.eq(2L), Mockito.anyString(), Mockito.eq(DocumentJob.State.PENDING), Mockito.eq(1));
+        Mockito.verify(documentTextRepository, Mockito.never()).findById("a");
+        Mockito.verify(documentJobRepository, Mockito.never()).save(Mockito.any(DocumentJob.class));
+    }
+
+    /**
+     * Тестирование метода sync(). Текст документа задания, обработанного любым узлом, добавляется
+     * в индекс один раз, даже если задание выбрано повторно
+     */
+    @Test
+    public void testSyncIndexesJobsCompletedByAnyNode() {
+        DocumentJob done = job(3L, "c");
+        done.setState(DocumentJob.State.DONE);
+        done.setCompletedAt(Instant.now());
+        Mockito.when(documentJobRepository.findAllByStateAndCompletedAtAfter(Mockito.eq(DocumentJob.State.DONE), Mockito.any()))
+                .thenReturn(Collections.singletonList(done));
+        Mockito.when(documentTextRepository.findById("c")).thenReturn(Optional.of(new DocumentText("c", 1, "text")));
+        ClientDocument client = client(10, 1);
+        Mockito.when(clientRepository.findAllByDocumentId("c")).thenReturn(Collections.singletonList(client));
+        documentPipeline.sync();
+        documentPipeline.sync();
+        Mockito.verify(clientSearchIndex, Mockito.times(1)).addDocumentText(10, "text");
+        Mockito.verify(clientResultCache, Mockito.times(1)).invalidate(1);
+    }
+
+    private static DocumentJob job(Long jobId, String documentId) {
+        DocumentJob job = new DocumentJob(documentId, DocumentJob.State.PENDING);
+        job.setJobId(jobId);
+        return job;
+    }
+
+    private static ClientDocument client(Integer clientId, Integer userId) {
+        ClientDocument client = Mockito.mock(ClientDocument.class);
+        Mockito.when(client.getClientId()).thenReturn(clientId);
+        Mockito.when(client.getUserId()).thenReturn(userId);
+        return client;
+    }
+}
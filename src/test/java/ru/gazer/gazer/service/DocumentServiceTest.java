@@ -0,0 +1,157 @@
+package ru.gazer.gazer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import junit.framework.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.gazer.gazer.models.Document;
+import ru.gazer.gazer.repos.DocumentJobRepository;
+import ru.gazer.gazer.repos.DocumentRepository;
+import ru.gazer.gazer.repos.DocumentTextRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Optional;
+
+/** Класс, предназначенный для тестирования методов класса DocumentService */
+@RunWith(MockitoJUnitRunner.class)
+public class DocumentServiceTest extends TestCase {
+
+    /** Идентификатор документа */
+    private static final String DOCUMENT_ID = "a";
+
+    /** Имитация хранилища документов */
+    @Mock
+    private DocumentStore documentStore;
+
+    /** Имитация интерфейса DocumentRepository */
+    @Mock
+    private DocumentRepository documentRepository;
+
+    /** Имитация интерфейса DocumentTextRepository */
+    @Mock
+    private DocumentTextRepository documentTextRepository;
+
+    /** Имитация интерфейса DocumentJobRepository */
+    @Mock
+    private DocumentJobRepository documentJobRepository;
+
+    /** Имитация менеджера транзакций */
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    /** Экземпляр DocumentService */
+    @InjectMocks
+    DocumentService documentService;
+
+    @Before
+    public void setUp() throws Exception {
+        ReflectionTestUtils.setField(documentService, "transactionTemplate", new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(documentService, "meterRegistry", new SimpleMeterRegistry());
+        documentService.init();
+        Mockito.lenient().when(documentStore.stage(Mockito.any(InputStream.class)))
+                .thenReturn(new StagedDocument(DOCUMENT_ID, 3, Paths.get("staged")));
+    }
+
+    /**
+     * Тестирование метода reference() для нового документа. Запись создается до того, как файл становится доступным
+     */
+    @Test
+    public void testReferenceCreatesRecordBeforeCommittingFile() throws Exception {
+        Mockito.when(documentRepository.findForUpdate(DOCUMENT_ID)).thenReturn(Optional.empty());
+        StagedDocument staged = documentService.stage(new ByteArrayInputStream(new byte[3]));
+        documentService.reference(staged);
+        documentService.discard(staged);
+        InOrder inOrder = Mockito.inOrder(documentRepository, documentStore);
+        inOrder.verify(documentRepository).saveAndFlush(Mockito.any(Document.class));
+        inOrder.verify(documentStore).commit(staged);
+        inOrder.verify(documentStore).discard(staged);
+    }
+
+    /**
+     * Тестирование метода reference(), когда запись о том же документе одновременно создана на другом узле.
+     * Исключение передается вызывающему, чтобы он повторил транзакцию, а повторная попытка блокирует созданную
+     * запись и увеличивает ее счетчик ссылок
+     */
+    @Test
+    public void testReferenceWhenRecordCreatedConcurrently() throws Exception {
+        Mockito.when(documentRepository.findForUpdate(DOCUMENT_ID))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(new Document(DOCUMENT_ID, 3L, 1)));
+        Mockito.when(documentRepository.saveAndFlush(Mockito.any(Document.class)))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+        StagedDocument staged = documentService.stage(new ByteArrayInputStream(new byte[3]));
+        try {
+            documentService.reference(staged);
+            fail();
+        } catch (DataIntegrityViolationException e) {
+            Mockito.verify(documentStore, Mockito.never()).commit(staged);
+        }
+        documentService.reference(staged);
+        Mockito.verify(documentRepository).incrementRefCount(DOCUMENT_ID);
+        Mockito.verify(documentStore).commit(staged);
+    }
+
+    /**
+     * Тестирование метода reference(), когда транзакция, создавшая запись о документе, откатилась.
+     * Файл, ставший доступным, удаляется под блокировкой заново созданной записи без ссылок
+     */
+    @Test
+    public void testReferenceRolledBackDeletesFile() throws Exception {
+        Mockito.when(documentRepository.findForUpdate(DOCUMENT_ID))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(new Document(DOCUMENT_ID, 3L, 0)));
+        StagedDocument staged = documentService.stage(new ByteArrayInputStream(new byte[3]));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            documentService.reference(staged);
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations())
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        Mockito.verify(documentRepository, Mockito.times(2)).saveAndFlush(Mockito.any(Document.class));
+        Mockito.verify(documentStore).delete(DOCUMENT_ID);
+    }
+
+    /**
+     * Тестирование метода purge(). Документ, на который снова появилась ссылка, не удаляется
+     */
+    @Test
+    public void testPurgeKeepsReferencedDocument() throws Exception {
+        Mockito.when(documentRepository.findForUpdate(DOCUMENT_ID)).thenReturn(Optional.of(new Document(DOCUMENT_ID, 3L, 1)));
+        documentService.purge(Collections.singleton(DOCUMENT_ID));
+        Mockito.verify(documentRepository, Mockito.never()).deleteUnreferenced(DOCUMENT_ID);
+        Mockito.verify(documentStore, Mockito.never()).delete(DOCUMENT_ID);
+    }
+
+    /**
+     * Тестирование метода release(). Когда ссылок не осталось, удаляются запись, текст, задания и файл
+     */
+    @Test
+    public void testReleaseDeletesUnreferencedDocument() throws Exception {
+        Mockito.when(documentRepository.findForUpdate(DOCUMENT_ID)).thenReturn(Optional.of(new Document(DOCUMENT_ID, 3L, 0)));
+        documentService.release(DOCUMENT_ID);
+        InOrder inOrder = Mockito.inOrder(documentRepository, documentStore);
+        inOrder.verify(documentRepository).decrementRefCount(DOCUMENT_ID);
+        inOrder.verify(documentRepository).findForUpdate(DOCUMENT_ID);
+        inOrder.verify(documentRepository).deleteUnreferenced(DOCUMENT_ID);
+        inOrder.verify(documentStore).delete(DOCUMENT_ID);
+        Mockito.verify(documentTextRepository).deleteByDocumentId(DOCUMENT_ID);
+        Mockito.verify(documentJobRepository).deleteAllByDocumentId(DOCUMENT_ID);
+    }
+}
@@ -0,0 +1,77 @@
+package ru.gazer.gazer.service;
+
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.resource.ResourceUrlProvider;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.util.Locale;
+
+/** Класс, предназначенный для тестирования методов класса FragmentCache */
+public class FragmentCacheTest extends TestCase {
+
+    /** Тестируемый кеш фрагментов */
+    FragmentCache fragmentCache = new FragmentCache();
+
+    /**
+     * Метод подключает к кешу движок шаблонов, читающий шаблоны приложения, и задает текущий запрос
+     */
+    @Before
+    public void setUp() throws Exception {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        SpringTemplateEngine templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+        ReflectionTestUtils.setField(fragmentCache, "templateEngine", templateEngine);
+        ReflectionTestUtils.setField(fragmentCache, "resourceUrlProvider", new ResourceUrlProvider());
+        ReflectionTestUtils.setField(fragmentCache, "version", "1");
+        ReflectionTestUtils.setField(fragmentCache, "locales", new Locale[] {new Locale("ru")});
+        ReflectionTestUtils.setField(fragmentCache, "enabled", true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setContextPath("/gazer");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, new MockHttpServletResponse()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RequestContextHolder.resetRequestAttributes();
+        LocaleContextHolder.resetLocaleContext();
+    }
+
+    /**
+     * Тестирование метода render(). Фрагмент отрисовывается с путем приложения в ссылках,
+     * а повторный вызов возвращает тот же результат из кеша.
+     */
+    @Test
+    public void testRenderIsCached() {
+        String menu = fragmentCache.render("clients-menu");
+        assertTrue(menu.contains("action=\"/gazer/search\""));
+        assertFalse(menu.contains("th:action"));
+        assertFalse(menu.contains("th:fragment"));
+        assertSame(menu, fragmentCache.render("clients-menu"));
+    }
+
+    /**
+     * Тестирование метода render() для разных локалей запроса. Локали с неподдерживаемым языком
+     * используют одну запись кеша, поэтому кеш не растет с количеством локалей в запросах.
+     */
+    @Test
+    public void testRenderFallsBackToSupportedLocale() {
+        LocaleContextHolder.setLocale(Locale.forLanguageTag("xx-YY"));
+        String first = fragmentCache.render("footer");
+        LocaleContextHolder.setLocale(Locale.forLanguageTag("zz"));
+        assertSame(first, fragmentCache.render("footer"));
+        LocaleContextHolder.setLocale(Locale.forLanguageTag("ru-RU"));
+        assertSame(first, fragmentCache.render("footer"));
+    }
+}
@@ -0,0 +1,61 @@
+package ru.gazer.gazer.service;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/** Класс, предназначенный для тестирования методов класса PdfValidatingInputStream */
+public class PdfValidatingInputStreamTest extends TestCase {
+
+    /**
+     * Тестирование чтения PDF файла допустимого размера. Содержимое должно читаться без изменений.
+     */
+    @Test
+    public void testValidDocument() throws Exception {
+        assertEquals("%PDF-1.4 test", read("%PDF-1.4 test", 100));
+    }
+
+    /**
+     * Тестирование чтения файла, который не начинается с сигнатуры PDF.
+     */
+    @Test
+    public void testNotPdf() throws Exception {
+        assertEquals(InvalidDocumentException.Reason.NOT_PDF, reject("<html></html>", 100));
+        assertEquals(InvalidDocumentException.Reason.NOT_PDF, reject("%PD", 100));
+    }
+
+    /**
+     * Тестирование чтения файла, превышающего допустимый размер.
+     */
+    @Test
+    public void testTooLarge() throws Exception {
+        assertEquals(InvalidDocumentException.Reason.TOO_LARGE, reject("%PDF-1.4 test", 10));
+    }
+
+    private static String read(String content, long maxSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new PdfValidatingInputStream(
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII)), maxSize)) {
+            byte[] buffer = new byte[4];
+            int n;
+            while ((n = in.read(buffer)) >= 0)
+                out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    private static InvalidDocumentException.Reason reject(String content, long maxSize) throws IOException {
+        try {
+            read(content, maxSize);
+        } catch (InvalidDocumentException e) {
+            return e.getReason();
+        }
+        fail();
+        return null;
+    }
+}
@@ -0,0 +1,156 @@
+package ru.gazer.gazer.service;
+
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.method.annotation.AuthenticationPrincipalArgumentResolver;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import reactor.core.publisher.Flux;
+import ru.gazer.gazer.controllers.ReactiveClientApiController;
+import ru.gazer.gazer.models.ClientSnapshot;
+import ru.gazer.gazer.models.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/** Класс, предназначенный для тестирования методов класса ReactiveClientSearch на базе данных H2 через R2DBC */
+public class ReactiveClientSearchTest extends TestCase {
+
+    /** Тестируемая выборка. Наибольшее количество записей в ответе равно 3 */
+    ReactiveClientSearch reactiveClientSearch;
+
+    /** Копия общих клиентов в памяти */
+    SharedClients sharedClients = new SharedClients();
+
+    /**
+     * Метод создает таблицу clients с клиентами двух пользователей и общими клиентами (user_id = 0).
+     * Общие клиенты есть и в таблице, и в копии SharedClients, поэтому выборка, читающая их из базы данных,
+     * вернула бы их дважды
+     */
+    @Before
+    public void setUp() {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse("r2dbc:h2:mem:///" + getName() + ";DB_CLOSE_DELAY=-1")
+                .mutate()
+                .option(ConnectionFactoryOptions.USER, "sa")
+                .option(ConnectionFactoryOptions.PASSWORD, "")
+                .build();
+        DatabaseClient databaseClient = DatabaseClient.create(ConnectionFactories.get(options));
+        databaseClient.sql("CREATE TABLE clients (client_id INT PRIMARY KEY, first_name VARCHAR(64), last_name VARCHAR(64),"
+                + " sex VARCHAR(8), age VARCHAR(3), passport_series VARCHAR(4), passport_number VARCHAR(6),"
+                + " phone VARCHAR(11), user_id INT)").then().block();
+        List<ClientSnapshot> clients = Arrays.asList(
+                new ClientSnapshot(1, "Test", "Client", "Male", "30", "1111", "222222", "88005553535", 0),
+                new ClientSnapshot(2, "Ivan", "Ivanov", "Male", "30", "1234", "567890", "89990000001", 1),
+                new ClientSnapshot(4, "Anna", "Ivanova", "Female", "25", "1234", "567891", "89990000002", 1),
+                new ClientSnapshot(5, "Ivan", "Ivanov", "Male", "41", "4321", "098765", "89990000003", 2),
+                new ClientSnapshot(6, "Ivan", "Ivanov", "Male", "50", "1111", "444444", "89990000004", 0),
+                new ClientSnapshot(7, "Ivan", "Ivanov", "Male", "35", "1111", "333333", "89990000005", 1));
+        for (ClientSnapshot client : clients)
+            databaseClient.sql("INSERT INTO clients VALUES ($1, $2, $3, $4, $5, $6, $7, $8, $9)")
+                    .bind(0, client.getClientId())
+                    .bind(1, client.getFirstName())
+                    .bind(2, client.getLastName())
+                    .bind(3, client.getSex())
+                    .bind(4, client.getAge())
+                    .bind(5, client.getPassportSeries())
+                    .bind(6, client.getPassportNumber())
+                    .bind(7, client.getPhone())
+                    .bind(8, client.getUserId())
+                    .then().block();
+        sharedClients.replace(Arrays.asList(clients.get(0), clients.get(4)));
+        reactiveClientSearch = new ReactiveClientSearch(options, 2, 3, sharedClients);
+    }
+
+    @After
+    public void tearDown() {
+        reactiveClientSearch.shutdown();
+        SecurityContextHolder.clearContext();
+    }
+
+    /**
+     * Тестирование метода getClients(). Клиенты пользователя сливаются с общими клиентами по clientId,
+     * клиенты других пользователей не возвращаются, а общие клиенты не повторяются
+     */
+    @Test
+    public void testGetClientsMergesSharedClients() {
+        assertEquals(Arrays.asList(1, 2, 4), ids(reactiveClientSearch.getClients(1, null, 3)));
+        assertEquals(Arrays.asList(4, 6, 7), ids(reactiveClientSearch.getClients(1, 2, 3)));
+        assertEquals(Arrays.asList(1, 5, 6), ids(reactiveClientSearch.getClients(2, null, 3)));
+    }
+
+    /**
+     * Тестирование ограничения количества записей. Значение limit приводится к диапазону от 1 до max-results
+     */
+    @Test
+    public void testLimitIsClamped() {
+        assertEquals(Arrays.asList(1, 2, 4), ids(reactiveClientSearch.getClients(1, null, 100)));
+        assertEquals(Arrays.asList(1), ids(reactiveClientSearch.getClients(1, null, 0)));
+        assertEquals(Arrays.asList(2, 6, 7), ids(reactiveClientSearch.getByName("Ivan", "Ivanov", 1, 100)));
+    }
+
+    /**
+     * Тестирование методов getByName() и getByPassport(). Находятся только клиенты пользователя и общие клиенты
+     */
+    @Test
+    public void testSearchIsScopedToOwner() {
+        assertEquals(Arrays.asList(5, 6), ids(reactiveClientSearch.getByName("Ivan", "Ivanov", 2, 100)));
+        assertEquals(Arrays.asList(1), ids(reactiveClientSearch.getByPassport("1111", "222222", 1)));
+        assertEquals(Arrays.asList(7), ids(reactiveClientSearch.getByPassport("1111", "333333", 1)));
+        assertTrue(ids(reactiveClientSearch.getByPassport("1111", "333333", 2)).isEmpty());
+    }
+
+    /**
+     * Тестирование потоковой передачи через ReactiveClientApiController. Ответ передается в формате
+     * application/x-ndjson, по одному клиенту пользователя или общему клиенту в строке
+     */
+    @Test
+    public void testStreamsNdjson() throws Exception {
+        ReactiveClientApiController controller = new ReactiveClientApiController();
+        ReflectionTestUtils.setField(controller, "reactiveClientSearch", reactiveClientSearch);
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setCustomArgumentResolvers(new AuthenticationPrincipalArgumentResolver())
+                .build();
+        User user = new User();
+        user.setId(2);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, Collections.emptyList()));
+        MvcResult result = mockMvc.perform(get("/api/v1/stream/clients/by-name")
+                        .param("firstName", "Ivan")
+                        .param("lastName", "Ivanov")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult(5000);
+        String[] lines = mockMvc.perform(asyncDispatch(result)).andReturn().getResponse().getContentAsString().split("\n");
+        assertEquals(MediaType.APPLICATION_NDJSON_VALUE, result.getResponse().getContentType());
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{") && lines[0].contains("\"clientId\":5"));
+        assertTrue(lines[1].startsWith("{") && lines[1].contains("\"clientId\":6"));
+    }
+
+    /**
+     * Метод дожидается завершения потока и возвращает clientId полученных записей
+     */
+    private static List<Integer> ids(Flux<ClientSnapshot> clients) {
+        List<Integer> ids = new ArrayList<>();
+        for (ClientSnapshot client : clients.collectList().block())
+            ids.add(client.getClientId());
+        return ids;
+    }
+}
@@ -0,0 +1,112 @@
+package ru.gazer.gazer.service;
+
+import junit.framework.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.security.authentication.RememberMeAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import ru.gazer.gazer.models.Role;
+import ru.gazer.gazer.models.User;
+
+import java.util.Arrays;
+
+/** Класс, предназначенный для тестирования методов класса SessionAttributeSerializer */
+@RunWith(MockitoJUnitRunner.class)
+public class SessionAttributeSerializerTest extends TestCase {
+
+    /** Имитация UserService */
+    @Mock
+    private UserService userService;
+
+    /** Экземпляр сериализатора */
+    SessionAttributeSerializer serializer;
+
+    /** Экземпляр класса User */
+    User user = new User();
+
+    @Before
+    public void setUp() {
+        serializer = new SessionAttributeSerializer(userService, "key", getClass().getClassLoader());
+        user.setId(1);
+        user.setUsername("Test User");
+        user.setEmail("test@mail.com");
+        user.setPassword("$2a$10$hash");
+        user.setRole(new Role(1, "USER"));
+    }
+
+    /**
+     * Тестирование сериализации контекста безопасности. В байтах хранятся только email и версия учетных данных, а при чтении
+     * пользователь загружается через UserService
+     */
+    @Test
+    public void testSecurityContextIsCompact() {
+        Mockito.when(userService.loadUserByUsername("test@mail.com")).thenReturn(user);
+        byte[] data = serializer.serialize(new SecurityContextImpl(
+                new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities())));
+        assertTrue(data.length < 32);
+        assertFalse(new String(data).contains("$2a$"));
+        SecurityContext context = (SecurityContext) serializer.deserialize(data);
+        assertTrue(context.getAuthentication() instanceof UsernamePasswordAuthenticationToken);
+        assertSame(user, context.getAuthentication().getPrincipal());
+        assertTrue(context.getAuthentication().isAuthenticated());
+    }
+
+    /**
+     * Тестирование сериализации контекста после входа по cookie remember-me
+     */
+    @Test
+    public void testRememberMeContext() {
+        Mockito.when(userService.loadUserByUsername("test@mail.com")).thenReturn(user);
+        byte[] data = serializer.serialize(new SecurityContextImpl(
+                new RememberMeAuthenticationToken("key", user, user.getAuthorities())));
+        SecurityContext context = (SecurityContext) serializer.deserialize(data);
+        assertTrue(context.getAuthentication() instanceof RememberMeAuthenticationToken);
+        assertSame(user, context.getAuthentication().getPrincipal());
+    }
+
+    /**
+     * Если пользователь удален, то восстанавливается пустой контекст безопасности
+     */
+    @Test
+    public void testDeletedUser() {
+        Mockito.when(userService.loadUserByUsername("test@mail.com")).thenThrow(new UsernameNotFoundException("User not found"));
+        byte[] data = serializer.serialize(new SecurityContextImpl(
+                new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities())));
+        SecurityContext context = (SecurityContext) serializer.deserialize(data);
+        assertNull(context.getAuthentication());
+    }
+
+    /**
+     * Если учетные данные пользователя сменили после сохранения сессии, то восстанавливается
+     * пустой контекст безопасности
+     */
+    @Test
+    public void testChangedCredentials() {
+        byte[] data = serializer.serialize(new SecurityContextImpl(
+                new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities())));
+        User changed = new User();
+        changed.setEmail("test@mail.com");
+        changed.setCredentialsVersion(1);
+        Mockito.when(userService.loadUserByUsername("test@mail.com")).thenReturn(changed);
+        SecurityContext context = (SecurityContext) serializer.deserialize(data);
+        assertNull(context.getAuthentication());
+    }
+
+    /**
+     * Остальные атрибуты сериализуются стандартной сериализацией Java
+     */
+    @Test
+    public void testOtherAttributes() {
+        Object value = Arrays.asList("a", "b");
+        assertEquals(value, serializer.deserialize(serializer.serialize(value)));
+        assertEquals("plain", serializer.deserialize(new SerializingConverter().convert("plain")));
+    }
+}
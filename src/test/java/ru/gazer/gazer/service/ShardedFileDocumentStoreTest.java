@@ -0,0 +1,86 @@
+package ru.gazer.gazer.service;
+
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Класс, предназначенный для тестирования методов класса ShardedFileDocumentStore */
+public class ShardedFileDocumentStoreTest extends TestCase {
+
+    /** SHA-256 строки "%PDF-1.4 test" */
+    static final String DOCUMENT_ID = ShardedFileDocumentStore.toHex(
+            ShardedFileDocumentStore.sha256().digest("%PDF-1.4 test".getBytes(StandardCharsets.US_ASCII)));
+
+    /** Временный корневой каталог хранилища */
+    Path root;
+
+    /** Экземпляр хранилища документов */
+    ShardedFileDocumentStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("store");
+        store = new ShardedFileDocumentStore(root.toString());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    /**
+     * Тестирование сохранения документа. Идентификатором должен быть SHA-256 содержимого,
+     * а файл должен лежать в подкаталогах по первым символам идентификатора.
+     */
+    @Test
+    public void testStageAndCommit() throws Exception {
+        StagedDocument staged = store.stage(content());
+        assertEquals(DOCUMENT_ID, staged.getDocumentId());
+        assertEquals(13, staged.getSize());
+        store.commit(staged);
+        Path file = store.resolve(DOCUMENT_ID);
+        assertEquals(root.resolve(DOCUMENT_ID.substring(0, 2)).resolve(DOCUMENT_ID.substring(2, 4)), file.getParent());
+        assertEquals("%PDF-1.4 test", new String(Files.readAllBytes(file), StandardCharsets.US_ASCII));
+        assertFalse(Files.exists(staged.getTempFile()));
+    }
+
+    /**
+     * Тестирование повторного сохранения того же содержимого. Временный файл должен удаляться,
+     * а в хранилище должен оставаться один файл.
+     */
+    @Test
+    public void testDeduplication() throws Exception {
+        store.commit(store.stage(content()));
+        StagedDocument duplicate = store.stage(content());
+        store.commit(duplicate);
+        assertFalse(Files.exists(duplicate.getTempFile()));
+        assertTrue(Files.exists(store.resolve(DOCUMENT_ID)));
+    }
+
+    /**
+     * Тестирование удаления документа и отказа в разрешении некорректного идентификатора.
+     */
+    @Test
+    public void testDelete() throws Exception {
+        store.commit(store.stage(content()));
+        store.delete(DOCUMENT_ID);
+        assertFalse(Files.exists(store.resolve(DOCUMENT_ID)));
+        try {
+            store.resolve("../../etc/passwd");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // ожидаемое исключение
+        }
+    }
+
+    private static ByteArrayInputStream content() {
+        return new ByteArrayInputStream("%PDF-1.4 test".getBytes(StandardCharsets.US_ASCII));
+    }
+}
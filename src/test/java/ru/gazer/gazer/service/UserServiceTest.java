@@ -9,10 +9,17 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import ru.gazer.gazer.models.User;
+import ru.gazer.gazer.models.UserDataVersion;
+import ru.gazer.gazer.repos.UserDataVersionRepository;
 import ru.gazer.gazer.repos.UserReposiroty;
 
+import java.time.Duration;
+
 /** Класс, предназначенный для тестирования методов класса UserService */
 @RunWith(MockitoJUnitRunner.class)
 public class UserServiceTest extends TestCase {
@@ -21,11 +28,19 @@ public class UserServiceTest extends TestCase {
     @Mock
     private UserReposiroty userRepository;
 
+    /** Имитация интерфейса UserDataVersionRepository */
+    @Mock
+    private UserDataVersionRepository userDataVersionRepository;
+
     /** Экземпляр энкодера BCryptPasswordEncoder*/
     @Spy
     BCryptPasswordEncoder encoder = new BCryptPasswordEncoder();
 
-    /** Экземпляр UserService. В него встраиваются зависимости BCryptPasswordEncoder и UserRepository */
+    /** Экземпляр кеша пользователей */
+    @Spy
+    UserDetailsCache userDetailsCache = new UserDetailsCache(100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+
+    /** Экземпляр UserService. В него встраиваются зависимости BCryptPasswordEncoder, UserRepository и UserDetailsCache */
     @InjectMocks
     UserService userService;
 
@@ -55,6 +70,23 @@ public class UserServiceTest extends TestCase {
     public void testSaveUser() {
         boolean res = userService.saveUser(user);
         assertTrue(res);
+        Mockito.verify(userDataVersionRepository).save(Mockito.any(UserDataVersion.class));
+    }
+
+    /**
+     * Тестирование метода saveUser(), когда хеширование пароля отклонено из-за нагрузки. Исключение
+     * передается вызывающему, а пользователь не сохраняется.
+     */
+    @Test
+    public void testSaveUserWhenHashingIsRejected() {
+        Mockito.doThrow(new AuthenticationServiceException("Очередь проверки паролей переполнена"))
+                .when(encoder).encode(Mockito.any());
+        try {
+            userService.saveUser(user);
+            fail();
+        } catch (AuthenticationServiceException e) {
+            Mockito.verify(userRepository, Mockito.never()).save(Mockito.any());
+        }
     }
 
     /**
@@ -80,14 +112,67 @@ public class UserServiceTest extends TestCase {
         assertEquals(receivedUser, user);
     }
 
+    /**
+     * Тестирование кеширования в методе loadUserByUsername(). Повторная загрузка пользователя не должна
+     * обращаться к базе данных, пока запись не удалена из кеша методом deleteUser().
+     */
+    @Test
+    public void testLoadUserByUsernameIsCached() {
+        user.setEmail("test@mail.com");
+        userService.loadUserByUsername("test@mail.com");
+        userService.loadUserByUsername("test@mail.com");
+        Mockito.verify(userRepository, Mockito.times(1)).findUserByEmail("test@mail.com");
+        userService.deleteUser(user);
+        userService.loadUserByUsername("test@mail.com");
+        Mockito.verify(userRepository, Mockito.times(2)).findUserByEmail("test@mail.com");
+    }
+
+    /**
+     * Тестирование кеширования в методе loadUserByUsername() на нескольких узлах. Если другой узел сменил пароль,
+     * то версия учетных данных в базе данных отличается, и пользователь загружается заново. Если другой узел
+     * удалил пользователя, то выбрасывается исключение UsernameNotFoundException.
+     */
+    @Test
+    public void testLoadUserByUsernameChecksCredentialsVersion() {
+        user.setEmail("test@mail.com");
+        userService.loadUserByUsername("test@mail.com");
+        Mockito.when(userRepository.findCredentialsVersionByEmail("test@mail.com")).thenReturn(1L);
+        userService.loadUserByUsername("test@mail.com");
+        Mockito.verify(userRepository, Mockito.times(2)).findUserByEmail("test@mail.com");
+        Mockito.when(userRepository.findCredentialsVersionByEmail("test@mail.com")).thenReturn(null);
+        try {
+            userService.loadUserByUsername("test@mail.com");
+            fail();
+        } catch (UsernameNotFoundException e) {
+            Mockito.verify(userRepository, Mockito.times(2)).findUserByEmail("test@mail.com");
+        }
+    }
+
     /**
      * Тестирование метода updateAccount(). Метод принимает два объекта User, один оригинальный, а
-     * второй - с обновленными данными. В оригинальным аккаунте обновляются значения полей и он сохраняется
-     * в базу данных.
+     * второй - с обновленными данными. В оригинальным аккаунте обновляются значения полей, он сохраняется
+     * в базу данных, а версия учетных данных увеличивается.
      */
     @Test
     public void testUpdateUser() {
         userService.updateAccount(user, user);
+        Mockito.verify(userRepository).incrementCredentialsVersion(1);
+    }
+
+    /**
+     * Тестирование метода updatePassword(). Пересчитанный хеш сохраняется в базу данных,
+     * а пользователь удаляется из кеша.
+     */
+    @Test
+    public void testUpdatePassword() {
+        user.setEmail("test@mail.com");
+        userService.loadUserByUsername("test@mail.com");
+        String hash = new BCryptPasswordEncoder(4).encode("password");
+        User updated = (User) userService.updatePassword(user, hash);
+        assertEquals(hash, updated.getPassword());
+        Mockito.verify(userRepository).updatePassword(1, hash);
+        userService.loadUserByUsername("test@mail.com");
+        Mockito.verify(userRepository, Mockito.times(2)).findUserByEmail("test@mail.com");
     }
 
     /**